@@ -0,0 +1,523 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatlabMat5Reader.java
+ * Copyright (C) 2026 FracPete
+ *
+ */
+
+package weka.core.converters;
+
+import us.hebi.matlab.mat.format.Mat5;
+import us.hebi.matlab.mat.format.Mat5File;
+import us.hebi.matlab.mat.format.Mat5Reader.EntryFilter;
+import us.hebi.matlab.mat.format.Mat5Reader.EntryHeader;
+import us.hebi.matlab.mat.types.AbstractSource;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads individual entries from Level 5 .mat files. The positions of the
+ * entries get determined once, from the tags of the top-level elements, so
+ * that entries can be read in any order without scanning the file again.
+ * The selected entries get presented to the MFL reader as a file of their
+ * own (file header followed by the entries), hence only these get decoded.
+ * The file stays open until the reader gets closed and can be used from
+ * multiple threads.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class MatlabMat5Reader
+  implements Closeable {
+
+  /** the size of the file header. */
+  public final static int HEADER_SIZE = 128;
+
+  /** the offset of the subsystem data offset in the header. */
+  protected final static int SUBSYS_OFFSET = 116;
+
+  /** the offset of the endian indicator in the header. */
+  protected final static int ENDIAN_OFFSET = 126;
+
+  /** the type of uncompressed top-level elements. */
+  protected final static int MI_MATRIX = 14;
+
+  /** the type of compressed top-level elements. */
+  protected final static int MI_COMPRESSED = 15;
+
+  /** the size of the buffer for reading. */
+  protected final static int BUFFER_SIZE = 64 * 1024;
+
+  /** the size of the buffer for reading the names of entries. */
+  protected final static int NAME_BUFFER_SIZE = 512;
+
+  /** the file being read. */
+  protected File m_File;
+
+  /** the underlying file. */
+  protected RandomAccessFile m_RandomAccess;
+
+  /** the channel to read from. */
+  protected FileChannel m_Channel;
+
+  /** the file header (without subsystem offset). */
+  protected byte[] m_Header;
+
+  /** the names of the entries, in file order. */
+  protected List<String> m_Names;
+
+  /** the position of the entries (name - position). */
+  protected Map<String,Long> m_Positions;
+
+  /** the size of the entries incl tag (name - size). */
+  protected Map<String,Long> m_Sizes;
+
+  /** the number of bytes read from the file. */
+  protected AtomicLong m_BytesRead;
+
+  /**
+   * Opens the file and determines the entries.
+   *
+   * @param file	the file to read
+   * @throws IOException	if not a Level 5 file or reading fails
+   */
+  public MatlabMat5Reader(File file) throws IOException {
+    m_File         = file;
+    m_BytesRead    = new AtomicLong();
+    m_RandomAccess = new RandomAccessFile(file, "r");
+    m_Channel      = m_RandomAccess.getChannel();
+    try {
+      initialize();
+    }
+    catch (IOException e) {
+      close();
+      throw e;
+    }
+    catch (RuntimeException e) {
+      close();
+      throw new IOException("Not a Level 5 file: " + file, e);
+    }
+  }
+
+  /**
+   * Reads the file header and determines the positions and names of the
+   * entries from the tags of the top-level elements. Subsystem data gets
+   * skipped.
+   *
+   * @throws IOException	if reading fails
+   */
+  protected void initialize() throws IOException {
+    ByteBuffer		buffer;
+    ByteOrder		order;
+    List<Long>		positions;
+    List<Long>		sizes;
+    long		subsys;
+    long		pos;
+    long		size;
+    int			type;
+    int			numBytes;
+    String		name;
+    int			i;
+
+    m_Header = new byte[HEADER_SIZE];
+    buffer   = ByteBuffer.wrap(m_Header);
+    readFully(buffer, 0);
+    if ((m_Header[ENDIAN_OFFSET] == 'I') && (m_Header[ENDIAN_OFFSET + 1] == 'M'))
+      order = ByteOrder.LITTLE_ENDIAN;
+    else if ((m_Header[ENDIAN_OFFSET] == 'M') && (m_Header[ENDIAN_OFFSET + 1] == 'I'))
+      order = ByteOrder.BIG_ENDIAN;
+    else
+      throw new IOException("Not a Level 5 file: " + m_File);
+    buffer.order(order);
+    subsys = buffer.getLong(SUBSYS_OFFSET);
+    // entries get presented without subsystem data
+    for (i = 0; i < 8; i++)
+      m_Header[SUBSYS_OFFSET + i] = 0;
+
+    // tags of the top-level elements
+    positions = new ArrayList<Long>();
+    sizes     = new ArrayList<Long>();
+    buffer    = ByteBuffer.allocate(8).order(order);
+    pos       = HEADER_SIZE;
+    while (pos + 8 <= m_Channel.size()) {
+      buffer.clear();
+      readFully(buffer, pos);
+      type     = buffer.getInt(0);
+      numBytes = buffer.getInt(4);
+      if ((type != MI_MATRIX) && (type != MI_COMPRESSED))
+        throw new IOException("Unexpected element type " + type + " at position " + pos + ": " + m_File);
+      size = 8L + (numBytes & 0xffffffffL);
+      if ((type == MI_MATRIX) && (size % 8 != 0))
+        size += 8 - size % 8;
+      if ((subsys == 0) || (subsys == 0x2020202020202020L) || (pos != subsys)) {
+        positions.add(pos);
+        sizes.add(size);
+      }
+      pos += size;
+    }
+
+    // names of the entries (only the array headers get decoded)
+    m_Names     = new ArrayList<String>();
+    m_Positions = new HashMap<String,Long>();
+    m_Sizes     = new HashMap<String,Long>();
+    for (i = 0; i < positions.size(); i++) {
+      name = readName(positions.get(i), sizes.get(i));
+      // like MFL, later entries replace earlier ones with the same name
+      if (!m_Positions.containsKey(name))
+        m_Names.add(name);
+      m_Positions.put(name, positions.get(i));
+      m_Sizes.put(name, sizes.get(i));
+    }
+  }
+
+  /**
+   * Determines the name of the entry, only decoding its array header.
+   *
+   * @param position	the position of the entry
+   * @param size	the size of the entry (incl tag and padding)
+   * @return		the name
+   * @throws IOException	if reading fails
+   */
+  protected String readName(long position, long size) throws IOException {
+    final List<String>	names;
+
+    names = new ArrayList<String>();
+    Mat5.newReader(new EntrySource(new long[]{position}, new long[]{size}, NAME_BUFFER_SIZE))
+      .setEntryFilter(new EntryFilter() {
+        public boolean isAccepted(EntryHeader header) {
+          names.add(header.getName());
+          return false;
+        }
+      })
+      .readMat();
+    if (names.size() != 1)
+      throw new IOException("Failed to determine name of entry at position " + position + ": " + m_File);
+
+    return names.get(0);
+  }
+
+  /**
+   * Fills the buffer with the bytes starting at the position.
+   *
+   * @param buffer	the buffer to fill
+   * @param position	the position in the file
+   * @throws IOException	if reading fails or end of file reached
+   */
+  protected void readFully(ByteBuffer buffer, long position) throws IOException {
+    int		read;
+
+    while (buffer.hasRemaining()) {
+      read = m_Channel.read(buffer, position);
+      if (read < 0)
+        throw new EOFException("Unexpected end of file: " + m_File);
+      position += read;
+      m_BytesRead.addAndGet(read);
+    }
+  }
+
+  /**
+   * Returns the number of bytes read from the file so far (file header,
+   * tags and the entries that were read).
+   *
+   * @return		the bytes
+   */
+  public long getBytesRead() {
+    return m_BytesRead.get();
+  }
+
+  /**
+   * Returns the names of the entries in the file, in file order.
+   *
+   * @return		the names
+   */
+  public List<String> getEntryNames() {
+    return new ArrayList<String>(m_Names);
+  }
+
+  /**
+   * Returns whether the entry is present.
+   *
+   * @param name	the name of the entry
+   * @return		true if present
+   */
+  public boolean hasEntry(String name) {
+    return m_Positions.containsKey(name);
+  }
+
+  /**
+   * Reads the specified entries, decoding the arrays into buffers from the
+   * shared pool. The returned file must be closed to return them to the
+   * pool.
+   *
+   * @param names	the names of the entries to read
+   * @return		the file with just these entries
+   * @throws IOException	if an entry is not present or reading fails
+   * @see MatlabMatBufferPool#getDefault()
+   */
+  public Mat5File read(Collection<String> names) throws IOException {
+    long[]	positions;
+    long[]	sizes;
+    int		i;
+
+    positions = new long[names.size()];
+    sizes     = new long[names.size()];
+    i         = 0;
+    for (String name: names) {
+      if (!m_Positions.containsKey(name))
+        throw new IOException("Entry not present: " + name);
+      positions[i] = m_Positions.get(name);
+      sizes[i]     = m_Sizes.get(name);
+      i++;
+    }
+
+    return Mat5.newReader(new EntrySource(positions, sizes, BUFFER_SIZE))
+      .setBufferAllocator(MatlabMatBufferPool.getDefault())
+      .readMat();
+  }
+
+  /**
+   * Closes the file.
+   *
+   * @throws IOException	if closing fails
+   */
+  public void close() throws IOException {
+    if (m_RandomAccess != null) {
+      m_RandomAccess.close();
+      m_RandomAccess = null;
+      m_Channel      = null;
+    }
+  }
+
+  /**
+   * Source presenting the file header followed by the selected entries,
+   * reading the entries from the shared channel (positional reads).
+   */
+  protected class EntrySource
+    extends AbstractSource {
+
+    /** the start of the segments in the source. */
+    protected long[] m_Starts;
+
+    /** the position of the segments in the file (-1 for the header). */
+    protected long[] m_FilePositions;
+
+    /** the total size of the source. */
+    protected long m_Size;
+
+    /** the current position in the source. */
+    protected long m_Position;
+
+    /** the buffer for small reads. */
+    protected byte[] m_Buffer;
+
+    /** the position of the buffer content in the source. */
+    protected long m_BufferStart;
+
+    /** the number of bytes in the buffer. */
+    protected int m_BufferLength;
+
+    /**
+     * Initializes the source.
+     *
+     * @param positions	the positions of the entries in the file
+     * @param sizes	the sizes of the entries (incl tag and padding)
+     * @param bufferSize	the size of the read-ahead buffer, small if
+     * 			only the start of the entries is of interest
+     */
+    public EntrySource(long[] positions, long[] sizes, int bufferSize) {
+      super(bufferSize);
+      int	i;
+
+      m_Starts        = new long[positions.length + 1];
+      m_FilePositions = new long[positions.length + 1];
+      m_FilePositions[0] = -1;
+      m_Size             = HEADER_SIZE;
+      for (i = 0; i < positions.length; i++) {
+        m_Starts[i + 1]        = m_Size;
+        m_FilePositions[i + 1] = positions[i];
+        m_Size                += sizes[i];
+      }
+      m_Buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Returns the segment that contains the position.
+     *
+     * @param position	the position in the source
+     * @return		the segment index
+     */
+    protected int segment(long position) {
+      int	i;
+
+      for (i = m_Starts.length - 1; i > 0; i--) {
+        if (position >= m_Starts[i])
+          return i;
+      }
+      return 0;
+    }
+
+    /**
+     * Returns the end of the segment.
+     *
+     * @param segment	the segment index
+     * @return		the end (excl)
+     */
+    protected long segmentEnd(int segment) {
+      if (segment + 1 < m_Starts.length)
+        return m_Starts[segment + 1];
+      return m_Size;
+    }
+
+    /**
+     * Returns the current position in the source.
+     *
+     * @return		the position
+     */
+    public long getPosition() {
+      return m_Position;
+    }
+
+    /**
+     * Reads the bytes into the array.
+     *
+     * @param buffer	the array to fill
+     * @param offset	the offset in the array
+     * @param length	the number of bytes to read
+     * @throws IOException	if reading fails or end of source reached
+     */
+    public void readBytes(byte[] buffer, int offset, int length) throws IOException {
+      readByteBuffer(ByteBuffer.wrap(buffer, offset, length));
+    }
+
+    /**
+     * Fills the buffer. Large reads go straight to the file, small ones
+     * through a read-ahead buffer.
+     *
+     * @param buffer	the buffer to fill
+     * @throws IOException	if reading fails or end of source reached
+     */
+    @Override
+    public void readByteBuffer(ByteBuffer buffer) throws IOException {
+      int	seg;
+      long	end;
+      int	length;
+      int	limit;
+
+      if (m_Position + buffer.remaining() > m_Size)
+        throw new EOFException("End of entries reached: " + m_File);
+
+      while (buffer.hasRemaining()) {
+        // in read-ahead buffer?
+        if ((m_Position >= m_BufferStart) && (m_Position < m_BufferStart + m_BufferLength)) {
+          length = (int) Math.min(buffer.remaining(), m_BufferStart + m_BufferLength - m_Position);
+          buffer.put(m_Buffer, (int) (m_Position - m_BufferStart), length);
+          m_Position += length;
+          continue;
+        }
+        seg    = segment(m_Position);
+        end    = segmentEnd(seg);
+        length = (int) Math.min(buffer.remaining(), end - m_Position);
+        if (m_FilePositions[seg] == -1) {
+          buffer.put(m_Header, (int) m_Position, length);
+        }
+        else if (length >= m_Buffer.length) {
+          limit = buffer.limit();
+          buffer.limit(buffer.position() + length);
+          readFully(buffer, m_FilePositions[seg] + m_Position - m_Starts[seg]);
+          buffer.limit(limit);
+        }
+        else {
+          m_BufferStart  = m_Position;
+          m_BufferLength = (int) Math.min(m_Buffer.length, end - m_Position);
+          readFully(ByteBuffer.wrap(m_Buffer, 0, m_BufferLength), m_FilePositions[seg] + m_Position - m_Starts[seg]);
+          continue;
+        }
+        m_Position += length;
+      }
+    }
+
+    /**
+     * Skips the bytes without reading them.
+     *
+     * @param numBytes	the number of bytes to skip
+     * @throws IOException	if end of source reached
+     */
+    @Override
+    public void skip(long numBytes) throws IOException {
+      if (m_Position + numBytes > m_Size)
+        throw new EOFException("End of entries reached: " + m_File);
+      m_Position += numBytes;
+    }
+
+    /**
+     * Returns a stream for the next bytes (eg for inflating), which
+     * advances the position of the source.
+     *
+     * @param numBytes	the number of bytes
+     * @return		the stream
+     */
+    protected InputStream readBytesAsStream(final long numBytes) {
+      return new InputStream() {
+        protected long m_Read = 0;
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          if (m_Read >= numBytes)
+            return -1;
+          len = (int) Math.min(len, numBytes - m_Read);
+          readBytes(b, off, len);
+          m_Read += len;
+          return len;
+        }
+        @Override
+        public int read() throws IOException {
+          if (m_Read >= numBytes)
+            return -1;
+          m_Read++;
+          return readByte() & 0xff;
+        }
+      };
+    }
+
+    /**
+     * Returns whether child sources (inflated entries) advance this source.
+     *
+     * @return		always true
+     */
+    public boolean isMutatedByChildren() {
+      return true;
+    }
+
+    /**
+     * Does nothing, the file gets closed by the reader.
+     */
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,569 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatlabMat73Reader.java
+ * Copyright (C) 2026 FracPete
+ *
+ */
+
+package weka.core.converters;
+
+import io.jhdf.HdfFile;
+import io.jhdf.api.Attribute;
+import io.jhdf.api.Dataset;
+import io.jhdf.api.Node;
+import us.hebi.matlab.mat.format.Mat5;
+import us.hebi.matlab.mat.types.Array;
+import us.hebi.matlab.mat.types.Cell;
+import us.hebi.matlab.mat.types.Char;
+import us.hebi.matlab.mat.types.AbstractMatrixBase;
+import us.hebi.matlab.mat.types.MatlabType;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads variables from Matlab v7.3 .mat files, which are HDF5 files, and
+ * turns them into the same array types that are used for Level 5 files.
+ * Only the datasets of the requested variables get read, with chunked
+ * datasets getting decompressed in parallel by the HDF5 library.
+ * <br>
+ * Supported are numeric, logical and char arrays, as well as cell arrays
+ * of these (structs, sparse matrices and objects are not).
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class MatlabMat73Reader
+  implements Closeable {
+
+  /** the header text of v7.3 files. */
+  public final static String HEADER_TEXT = "MATLAB 7.3";
+
+  /** the HDF5 signature. */
+  public final static byte[] HDF5_SIGNATURE = new byte[]{(byte) 0x89, 'H', 'D', 'F', '\r', '\n', 0x1a, '\n'};
+
+  /** the size of the user block that Matlab prefixes the HDF5 data with. */
+  public final static int USER_BLOCK_SIZE = 512;
+
+  /** the attribute with the Matlab class. */
+  public final static String ATTRIBUTE_CLASS = "MATLAB_class";
+
+  /** the attribute indicating an empty array. */
+  public final static String ATTRIBUTE_EMPTY = "MATLAB_empty";
+
+  /** the attribute indicating a sparse matrix. */
+  public final static String ATTRIBUTE_SPARSE = "MATLAB_sparse";
+
+  /** the underlying file. */
+  protected HdfFile m_File;
+
+  /** the storage size of the datasets read so far. */
+  protected AtomicLong m_BytesRead;
+
+  /**
+   * Opens the file for reading.
+   *
+   * @param file	the file to read
+   * @throws IOException	if opening fails
+   */
+  public MatlabMat73Reader(File file) throws IOException {
+    m_BytesRead = new AtomicLong();
+    try {
+      m_File = new HdfFile(file);
+    }
+    catch (Exception e) {
+      throw new IOException("Failed to open v7.3 file: " + file, e);
+    }
+  }
+
+  /**
+   * Checks whether the file is a v7.3 (ie HDF5) file, either via the text
+   * in the header or the HDF5 signature.
+   *
+   * @param file	the file to check
+   * @return		true if v7.3 file
+   * @throws IOException	if reading fails
+   */
+  public static boolean isMat73(File file) throws IOException {
+    RandomAccessFile	raf;
+    byte[]		header;
+    int			read;
+
+    header = new byte[USER_BLOCK_SIZE + HDF5_SIGNATURE.length];
+    raf    = null;
+    try {
+      raf  = new RandomAccessFile(file, "r");
+      read = raf.read(header);
+    }
+    finally {
+      if (raf != null)
+        raf.close();
+    }
+
+    if ((read >= HEADER_TEXT.length()) && new String(header, 0, HEADER_TEXT.length(), "US-ASCII").equals(HEADER_TEXT))
+      return true;
+    return hasSignature(header, 0, read) || hasSignature(header, USER_BLOCK_SIZE, read);
+  }
+
+  /**
+   * Checks whether the HDF5 signature is present at the offset.
+   *
+   * @param header	the header bytes
+   * @param offset	the offset to check
+   * @param read	the number of bytes that were read
+   * @return		true if present
+   */
+  protected static boolean hasSignature(byte[] header, int offset, int read) {
+    int		i;
+
+    if (offset + HDF5_SIGNATURE.length > read)
+      return false;
+    for (i = 0; i < HDF5_SIGNATURE.length; i++) {
+      if (header[offset + i] != HDF5_SIGNATURE[i])
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the names of the variables stored in the file (excluding the
+   * internal groups like "#refs#").
+   *
+   * @return		the names
+   */
+  public List<String> getEntryNames() {
+    List<String>	result;
+
+    result = new ArrayList<String>();
+    for (String name: m_File.getChildren().keySet()) {
+      if (!name.startsWith("#"))
+        result.add(name);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the variable with the specified name.
+   *
+   * @param name	the name of the variable
+   * @return		the array
+   * @throws IOException	if the variable is not present or not supported
+   */
+  public Array getArray(String name) throws IOException {
+    Node	node;
+
+    node = m_File.getChildren().get(name);
+    if (node == null)
+      throw new IOException("Variable not present: " + name);
+
+    return convert(node);
+  }
+
+  /**
+   * Returns the value of the string attribute.
+   *
+   * @param node	the node to get the attribute from
+   * @param name	the name of the attribute
+   * @return		the value, null if not present
+   */
+  protected String getStringAttribute(Node node, String name) {
+    Attribute	att;
+    Object	data;
+
+    att = node.getAttribute(name);
+    if (att == null)
+      return null;
+    data = att.getData();
+    if ((data != null) && data.getClass().isArray())
+      data = java.lang.reflect.Array.getLength(data) > 0 ? java.lang.reflect.Array.get(data, 0) : null;
+    if (data == null)
+      return null;
+
+    return data.toString();
+  }
+
+  /**
+   * Returns the Matlab dimensions of the dataset (HDF5 stores them
+   * in reverse order).
+   *
+   * @param dataset	the dataset to get the dimensions for
+   * @return		the dimensions, at least two
+   */
+  protected int[] getDimensions(Dataset dataset) {
+    int[]	dims;
+    int[]	result;
+    int		i;
+
+    dims = dataset.getDimensions();
+    if (dims.length == 0)
+      return new int[]{1, 1};
+    if (dims.length == 1)
+      return new int[]{dims[0], 1};
+
+    result = new int[dims.length];
+    for (i = 0; i < dims.length; i++)
+      result[i] = dims[dims.length - 1 - i];
+
+    return result;
+  }
+
+  /**
+   * Converts the node into an array.
+   *
+   * @param node	the node to convert
+   * @return		the array
+   * @throws IOException	if not supported
+   */
+  protected Array convert(Node node) throws IOException {
+    Dataset	dataset;
+    String	cls;
+    int[]	dims;
+    MatlabType	type;
+    Object	data;
+    long[]	refs;
+    FlatMatrix	codes;
+    Char	chr;
+    Cell	cell;
+    int		i;
+
+    cls = getStringAttribute(node, ATTRIBUTE_CLASS);
+    if (node.isGroup() || !(node instanceof Dataset)) {
+      if (node.getAttribute(ATTRIBUTE_SPARSE) != null)
+        throw new IOException("Sparse matrices are not supported: " + node.getPath());
+      throw new IOException("Matlab class '" + cls + "' not supported: " + node.getPath());
+    }
+    if (cls == null)
+      throw new IOException("No Matlab class available: " + node.getPath());
+
+    dataset = (Dataset) node;
+
+    // empty arrays only store their dimensions
+    if (node.getAttribute(ATTRIBUTE_EMPTY) != null) {
+      if (cls.equals("cell"))
+        return Mat5.newCell(0, 0);
+      else if (cls.equals("char"))
+        return Mat5.newChar(0, 0);
+      else
+        return Mat5.newMatrix(0, 0);
+    }
+
+    dims = getDimensions(dataset);
+    type = cls.equals("logical") ? MatlabType.UInt8 : MatlabMatDataCell.parseType(cls);
+    if (!cls.equals("cell") && !cls.equals("char") && (type == null))
+      throw new IOException("Matlab class '" + cls + "' not supported: " + node.getPath());
+    try {
+      data = dataset.getDataFlat();
+      m_BytesRead.addAndGet(dataset.getStorageInBytes());
+    }
+    catch (RuntimeException e) {
+      throw new IOException("Failed to read data of '" + node.getPath() + "'", e);
+    }
+
+    // data is in column-major order, due to the reversed dimensions
+    if (cls.equals("cell")) {
+      if (!(data instanceof long[]))
+        throw new IOException("Unexpected data type for cell array: " + data.getClass().getSimpleName() + ", " + node.getPath());
+      refs = (long[]) data;
+      cell = Mat5.newCell(dims);
+      for (i = 0; i < refs.length; i++)
+        cell.set(i, convert(m_File.getNodeByAddress(refs[i])));
+      return cell;
+    }
+    else if (cls.equals("char")) {
+      codes = new FlatMatrix(dims, MatlabType.UInt16, false, data, node.getPath());
+      chr   = Mat5.newChar(dims);
+      for (i = 0; i < codes.getNumElements(); i++)
+        chr.setChar(i, (char) codes.getLong(i));
+      return chr;
+    }
+    else {
+      // the decoded data gets used as is, without copying or widening
+      return new FlatMatrix(dims, type, cls.equals("logical"), data, node.getPath());
+    }
+  }
+
+  /**
+   * Returns the number of bytes read so far, i.e., the storage size of the
+   * datasets that were read (the HDF5 library reads the file itself, so
+   * metadata isn't included).
+   *
+   * @return		the bytes
+   */
+  public long getBytesRead() {
+    return m_BytesRead.get();
+  }
+
+  /**
+   * Closes the file.
+   *
+   * @throws IOException	if closing fails
+   */
+  public void close() throws IOException {
+    if (m_File != null) {
+      m_File.close();
+      m_File = null;
+    }
+  }
+
+  /**
+   * Read-only numeric matrix backed by the flat array that the HDF5 library
+   * decoded the dataset into (byte, short, int, long, float, double or
+   * BigInteger for uint64), in column-major order. Avoids copying the data
+   * into a Level 5 matrix, which would also be limited to 2GB.
+   */
+  protected static class FlatMatrix
+    extends AbstractMatrixBase {
+
+    /** the Matlab class. */
+    protected MatlabType m_Type;
+
+    /** whether logical. */
+    protected boolean m_Logical;
+
+    /** the data if byte. */
+    protected byte[] m_Bytes;
+
+    /** the data if short. */
+    protected short[] m_Shorts;
+
+    /** the data if int. */
+    protected int[] m_Ints;
+
+    /** the data if long. */
+    protected long[] m_Longs;
+
+    /** the data if float. */
+    protected float[] m_Floats;
+
+    /** the data if double. */
+    protected double[] m_Doubles;
+
+    /** the data if BigInteger. */
+    protected BigInteger[] m_BigIntegers;
+
+    /**
+     * Initializes the matrix.
+     *
+     * @param dims	the dimensions
+     * @param type	the Matlab class
+     * @param logical	whether logical
+     * @param data	the flat data
+     * @param path	the path of the dataset, for error messages
+     * @throws IOException	if the data type is not supported or the
+     * 				number of elements doesn't match
+     */
+    public FlatMatrix(int[] dims, MatlabType type, boolean logical, Object data, String path) throws IOException {
+      super(dims);
+      int	length;
+
+      m_Type    = type;
+      m_Logical = logical;
+      if (data instanceof byte[])
+        m_Bytes = (byte[]) data;
+      else if (data instanceof short[])
+        m_Shorts = (short[]) data;
+      else if (data instanceof int[])
+        m_Ints = (int[]) data;
+      else if (data instanceof long[])
+        m_Longs = (long[]) data;
+      else if (data instanceof float[])
+        m_Floats = (float[]) data;
+      else if (data instanceof double[])
+        m_Doubles = (double[]) data;
+      else if (data instanceof BigInteger[])
+        m_BigIntegers = (BigInteger[]) data;
+      else
+        throw new IOException("Unsupported data type for Matlab class '" + type + "': " + data.getClass().getSimpleName() + ", " + path);
+      length = java.lang.reflect.Array.getLength(data);
+      if (length != getNumElements())
+        throw new IOException("Number of elements differs from dimensions (" + length + " != " + getNumElements() + "): " + path);
+    }
+
+    /**
+     * Returns the Matlab class.
+     *
+     * @return		the class
+     */
+    public MatlabType getType() {
+      return m_Type;
+    }
+
+    /**
+     * Returns whether the matrix is logical.
+     *
+     * @return		true if logical
+     */
+    public boolean isLogical() {
+      return m_Logical;
+    }
+
+    /**
+     * Returns whether the matrix is complex.
+     *
+     * @return		always false
+     */
+    public boolean isComplex() {
+      return false;
+    }
+
+    /**
+     * Returns the value at the column-major index.
+     *
+     * @param index	the index
+     * @return		the value
+     */
+    public double getDouble(int index) {
+      if (m_Doubles != null)
+        return m_Doubles[index];
+      if (m_Floats != null)
+        return m_Floats[index];
+      if (m_BigIntegers != null)
+        return m_BigIntegers[index].doubleValue();
+      return getLong(index);
+    }
+
+    /**
+     * Returns the value at the column-major index.
+     *
+     * @param index	the index
+     * @return		the value
+     */
+    public long getLong(int index) {
+      if (m_Bytes != null)
+        return m_Bytes[index];
+      if (m_Shorts != null)
+        return m_Shorts[index];
+      if (m_Ints != null)
+        return m_Ints[index];
+      if (m_Longs != null)
+        return m_Longs[index];
+      if (m_BigIntegers != null)
+        return m_BigIntegers[index].longValue();
+      return (long) getDouble(index);
+    }
+
+    /**
+     * Not supported, read-only.
+     *
+     * @param index	ignored
+     * @param value	ignored
+     */
+    public void setLong(int index, long value) {
+      throw new UnsupportedOperationException("Read-only!");
+    }
+
+    /**
+     * Not supported, read-only.
+     *
+     * @param index	ignored
+     * @param value	ignored
+     */
+    public void setDouble(int index, double value) {
+      throw new UnsupportedOperationException("Read-only!");
+    }
+
+    /**
+     * Not supported, not complex.
+     *
+     * @param index	ignored
+     * @return		nothing
+     */
+    public long getImaginaryLong(int index) {
+      throw new IllegalStateException("Not complex!");
+    }
+
+    /**
+     * Not supported, not complex.
+     *
+     * @param index	ignored
+     * @param value	ignored
+     */
+    public void setImaginaryLong(int index, long value) {
+      throw new IllegalStateException("Not complex!");
+    }
+
+    /**
+     * Not supported, not complex.
+     *
+     * @param index	ignored
+     * @return		nothing
+     */
+    public double getImaginaryDouble(int index) {
+      throw new IllegalStateException("Not complex!");
+    }
+
+    /**
+     * Not supported, not complex.
+     *
+     * @param index	ignored
+     * @param value	ignored
+     */
+    public void setImaginaryDouble(int index, double value) {
+      throw new IllegalStateException("Not complex!");
+    }
+
+    /**
+     * Does nothing, the data is managed by the garbage collector.
+     */
+    public void close() {
+    }
+
+    /**
+     * Returns the hash code of the data.
+     *
+     * @return		the hash code
+     */
+    @Override
+    protected int subHashCode() {
+      int	result;
+      int	i;
+
+      result = m_Type.hashCode();
+      for (i = 0; i < getNumElements(); i++)
+        result = 31 * result + Double.valueOf(getDouble(i)).hashCode();
+      return result;
+    }
+
+    /**
+     * Compares type and data with the other matrix.
+     *
+     * @param other	the matrix to compare with
+     * @return		true if equal
+     */
+    @Override
+    protected boolean subEqualsGuaranteedSameClass(Object other) {
+      FlatMatrix	matrix;
+      int		i;
+
+      matrix = (FlatMatrix) other;
+      if ((m_Type != matrix.m_Type) || (m_Logical != matrix.m_Logical) || !Arrays.equals(dims, matrix.dims))
+        return false;
+      for (i = 0; i < getNumElements(); i++) {
+        if (Double.compare(getDouble(i), matrix.getDouble(i)) != 0)
+          return false;
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,329 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatlabMatBufferPool.java
+ * Copyright (C) 2026 FracPete
+ *
+ */
+
+package weka.core.converters;
+
+import us.hebi.matlab.mat.format.BufferAllocator;
+import us.hebi.matlab.mat.format.Mat5;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool for the buffers used when reading .mat files, shared between all
+ * threads: the byte buffers that MFL decodes the arrays into and the
+ * scratch arrays that the loader uses for the conversion. Buffers are
+ * grouped into power-of-two size classes and kept in lock-free queues, so
+ * concurrent loads don't block each other. Only up to a maximum number of
+ * bytes is retained (see {@link #setMaxRetained(long)}), anything beyond
+ * that is left to the garbage collector.
+ * <br>
+ * Buffers handed out are not cleared, hence the pool must only be used for
+ * reading, where all the content gets overwritten.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class MatlabMatBufferPool
+  implements BufferAllocator {
+
+  /** buffers up to this size are allocated on the heap and not pooled (like MFL does). */
+  public final static int MIN_POOLED_SIZE = 4096;
+
+  /** the default maximum number of bytes to retain. */
+  public final static long DEFAULT_MAX_RETAINED = 256L * 1024 * 1024;
+
+  /** the number of size classes (larger arrays are not pooled). */
+  protected final static int NUM_CLASSES = 31;
+
+  /** the shared pool. */
+  protected final static MatlabMatBufferPool DEFAULT = new MatlabMatBufferPool(DEFAULT_MAX_RETAINED);
+
+  /** the maximum number of bytes to retain. */
+  protected volatile long m_MaxRetained;
+
+  /** the number of bytes currently retained. */
+  protected final AtomicLong m_Retained;
+
+  /** the byte buffers per size class. */
+  protected final Queue<ByteBuffer>[] m_Buffers;
+
+  /** the double arrays per size class. */
+  protected final Queue<double[]>[] m_Doubles;
+
+  /** the string arrays per size class. */
+  protected final Queue<String[]>[] m_Strings;
+
+  /**
+   * Initializes the pool.
+   *
+   * @param maxRetained	the maximum number of bytes to retain
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public MatlabMatBufferPool(long maxRetained) {
+    int		i;
+
+    m_MaxRetained = maxRetained;
+    m_Retained    = new AtomicLong();
+    m_Buffers     = new Queue[NUM_CLASSES];
+    m_Doubles     = new Queue[NUM_CLASSES];
+    m_Strings     = new Queue[NUM_CLASSES];
+    for (i = 0; i < NUM_CLASSES; i++) {
+      m_Buffers[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+      m_Doubles[i] = new ConcurrentLinkedQueue<double[]>();
+      m_Strings[i] = new ConcurrentLinkedQueue<String[]>();
+    }
+  }
+
+  /**
+   * Returns the pool shared by all loaders. Retains up to
+   * {@link #DEFAULT_MAX_RETAINED} bytes, unless changed via
+   * {@link #setMaxRetained(long)}.
+   *
+   * @return		the pool
+   */
+  public static MatlabMatBufferPool getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Returns the size class for the number of elements, ie the exponent
+   * of the next power of two.
+   *
+   * @param numElements	the number of elements
+   * @return		the size class
+   */
+  protected static int sizeClass(int numElements) {
+    if (numElements <= 1)
+      return 0;
+    return 32 - Integer.numberOfLeadingZeros(numElements - 1);
+  }
+
+  /**
+   * Checks whether arrays/buffers of this length can be pooled.
+   *
+   * @param length	the length of the array/buffer
+   * @return		true if poolable
+   */
+  protected static boolean isPoolable(int length) {
+    int		cls;
+
+    cls = sizeClass(length);
+    return (cls < NUM_CLASSES) && ((1 << cls) == length);
+  }
+
+  /**
+   * Reserves the bytes for retaining a buffer.
+   *
+   * @param numBytes	the size of the buffer
+   * @return		true if the buffer can be retained
+   */
+  protected boolean reserve(long numBytes) {
+    long	current;
+
+    do {
+      current = m_Retained.get();
+      if (current + numBytes > m_MaxRetained)
+        return false;
+    }
+    while (!m_Retained.compareAndSet(current, current + numBytes));
+
+    return true;
+  }
+
+  /**
+   * Returns a buffer with the specified number of bytes remaining.
+   *
+   * @param numBytes	the number of bytes
+   * @return		the buffer
+   */
+  public ByteBuffer allocate(int numBytes) {
+    ByteBuffer	result;
+    int		cls;
+
+    if (numBytes <= MIN_POOLED_SIZE)
+      return ByteBuffer.allocate(numBytes).order(Mat5.DEFAULT_ORDER);
+
+    cls = sizeClass(numBytes);
+    if (cls >= NUM_CLASSES)
+      return ByteBuffer.allocateDirect(numBytes).order(Mat5.DEFAULT_ORDER);
+
+    result = m_Buffers[cls].poll();
+    if (result != null)
+      m_Retained.addAndGet(-result.capacity());
+    else
+      result = ByteBuffer.allocateDirect(1 << cls);
+    result.clear();
+    result.limit(numBytes);
+
+    return result.order(Mat5.DEFAULT_ORDER);
+  }
+
+  /**
+   * Returns the buffer to the pool.
+   *
+   * @param buffer	the buffer to release
+   */
+  public void release(ByteBuffer buffer) {
+    if ((buffer == null) || !buffer.isDirect() || !isPoolable(buffer.capacity()))
+      return;
+    if (reserve(buffer.capacity()))
+      m_Buffers[sizeClass(buffer.capacity())].offer(buffer);
+  }
+
+  /**
+   * Returns an array with at least the specified number of elements.
+   * The content is undefined.
+   *
+   * @param numElements	the minimum number of elements
+   * @return		the array
+   */
+  public double[] acquireDoubles(int numElements) {
+    double[]	result;
+    int		cls;
+
+    cls = sizeClass(numElements);
+    if (cls >= NUM_CLASSES)
+      return new double[numElements];
+    result = m_Doubles[cls].poll();
+    if (result != null)
+      m_Retained.addAndGet(-8L * result.length);
+    else
+      result = new double[1 << cls];
+
+    return result;
+  }
+
+  /**
+   * Returns the array to the pool.
+   *
+   * @param array	the array to release, ignored if null
+   */
+  public void releaseDoubles(double[] array) {
+    if ((array == null) || !isPoolable(array.length))
+      return;
+    if (reserve(8L * array.length))
+      m_Doubles[sizeClass(array.length)].offer(array);
+  }
+
+  /**
+   * Returns an array with at least the specified number of elements,
+   * all of them null.
+   *
+   * @param numElements	the minimum number of elements
+   * @return		the array
+   */
+  public String[] acquireStrings(int numElements) {
+    String[]	result;
+    int		cls;
+
+    cls = sizeClass(numElements);
+    if (cls >= NUM_CLASSES)
+      return new String[numElements];
+    result = m_Strings[cls].poll();
+    if (result != null)
+      m_Retained.addAndGet(-8L * result.length);
+    else
+      result = new String[1 << cls];
+
+    return result;
+  }
+
+  /**
+   * Returns the array to the pool. The array gets cleared, to avoid
+   * holding on to the strings.
+   *
+   * @param array	the array to release, ignored if null
+   */
+  public void releaseStrings(String[] array) {
+    if ((array == null) || !isPoolable(array.length))
+      return;
+    Arrays.fill(array, null);
+    if (reserve(8L * array.length))
+      m_Strings[sizeClass(array.length)].offer(array);
+  }
+
+  /**
+   * Returns the number of bytes currently retained by the pool
+   * (references in string arrays count as 8 bytes).
+   *
+   * @return		the bytes
+   */
+  public long getRetained() {
+    return m_Retained.get();
+  }
+
+  /**
+   * Sets the maximum number of bytes to retain. If lowered, pooled buffers
+   * get dropped (largest first) until the limit is met.
+   *
+   * @param value	the bytes, 0 to disable pooling
+   */
+  public void setMaxRetained(long value) {
+    if (value < 0)
+      throw new IllegalArgumentException("Maximum number of bytes to retain must be at least 0: " + value);
+    m_MaxRetained = value;
+    trim();
+  }
+
+  /**
+   * Returns the maximum number of bytes to retain.
+   *
+   * @return		the bytes
+   */
+  public long getMaxRetained() {
+    return m_MaxRetained;
+  }
+
+  /**
+   * Drops pooled buffers and arrays (largest first) until the retained
+   * bytes no longer exceed the maximum.
+   */
+  protected void trim() {
+    ByteBuffer	buffer;
+    double[]	doubles;
+    String[]	strings;
+    int		i;
+
+    for (i = NUM_CLASSES - 1; i >= 0; i--) {
+      while (m_Retained.get() > m_MaxRetained) {
+        buffer = m_Buffers[i].poll();
+        if (buffer != null) {
+          m_Retained.addAndGet(-buffer.capacity());
+          continue;
+        }
+        doubles = m_Doubles[i].poll();
+        if (doubles != null) {
+          m_Retained.addAndGet(-8L * doubles.length);
+          continue;
+        }
+        strings = m_Strings[i].poll();
+        if (strings != null) {
+          m_Retained.addAndGet(-8L * strings.length);
+          continue;
+        }
+        break;
+      }
+    }
+  }
+}
@@ -0,0 +1,975 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatlabMatDataCell.java
+ * Copyright (C) 2026 FracPete
+ *
+ */
+
+package weka.core.converters;
+
+import us.hebi.matlab.mat.format.Mat5;
+import us.hebi.matlab.mat.format.Mat5Serializable;
+import us.hebi.matlab.mat.format.Mat5Type;
+import us.hebi.matlab.mat.format.Mat5WriteUtil;
+import us.hebi.matlab.mat.types.AbstractArray;
+import us.hebi.matlab.mat.types.Char;
+import us.hebi.matlab.mat.types.MatlabType;
+import us.hebi.matlab.mat.types.Matrix;
+import us.hebi.matlab.mat.types.Sink;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cell that serializes the data of an Instances object straight to the sink,
+ * without creating a Matlab object for each value. The values get gathered
+ * column by column in blocks of rows and then written sequentially, as the
+ * .mat format stores arrays in column-major order. Nominal and string values
+ * are written from pre-encoded label tables.
+ * <br>
+ * Missing values are stored as NaN for numeric attributes (Weka's internal
+ * representation, i.e., the values get passed through) and as empty string
+ * otherwise.
+ * <br>
+ * Date attributes can be stored as strings (using the attribute's format),
+ * as Matlab datenum or as POSIX time (seconds since 1970-01-01 UTC).
+ * <br>
+ * Numeric columns are stored as double by default. Optionally (columns
+ * layout only), the narrowest lossless Matlab class gets determined from a
+ * scan of each column's range and integrality: int8, uint8, int16, uint16,
+ * int32 or uint32 for integral values without missing values, single if all
+ * values can be represented as float, double otherwise. The class can also
+ * be specified per column; values that the class cannot represent (missing
+ * or out of range) get rejected, rounding results in a warning.
+ * <br>
+ * Supports two layouts:
+ * <ul>
+ *   <li>cell - rows x attributes cell, with a scalar or a string per cell</li>
+ *   <li>columns - 1 x attributes cell, with a rows x 1 numeric matrix for
+ *   numeric attributes and a rows x 1 cell of strings otherwise</li>
+ * </ul>
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class MatlabMatDataCell
+  extends AbstractArray
+  implements Mat5Serializable, Mat5Serializable.Mat5Attributes {
+
+  /** the cell layout (rows x attributes). */
+  public final static int LAYOUT_CELL = 0;
+
+  /** the column layout (1 x attributes, with column vectors). */
+  public final static int LAYOUT_COLUMNS = 1;
+
+  /** the maximum number of values to buffer when gathering columns. */
+  public final static int MAX_BUFFER_SIZE = 1024 * 1024;
+
+  /** dates as strings, using the attribute's format. */
+  public final static int DATE_STRING = 0;
+
+  /** dates as Matlab datenum (days since year 0). */
+  public final static int DATE_DATENUM = 1;
+
+  /** dates as POSIX time (seconds since 1970-01-01 UTC). */
+  public final static int DATE_POSIX = 2;
+
+  /** the datenum of 1970-01-01. */
+  public final static double DATENUM_EPOCH = 719529.0;
+
+  /** the milli-seconds per day. */
+  public final static double MSECS_PER_DAY = 86400000.0;
+
+  /** the string to use for missing values. */
+  public final static String MISSING_VALUE = "";
+
+  /** 2^63, the smallest uint64 that doesn't fit into a long. */
+  protected final static double TWO_POW_63 = 9.223372036854775808E18;
+
+  /** the data to write. */
+  protected Instances m_Data;
+
+  /** the layout. */
+  protected int m_Layout;
+
+  /** how to store dates. */
+  protected int m_DateEncoding;
+
+  /** the types of the numeric columns. */
+  protected MatlabType[] m_Types;
+
+  /** whether the attribute is written as number. */
+  protected boolean[] m_Numeric;
+
+  /** the pre-encoded labels for nominal and string attributes. */
+  protected Char[][] m_Labels;
+
+  /** the serialized sizes of the pre-encoded labels. */
+  protected int[][] m_LabelSizes;
+
+  /** the pre-encoded values of the other non-numeric attributes. */
+  protected Char[][] m_Strings;
+
+  /** the encoded missing value. */
+  protected Char m_Missing;
+
+  /** the serialized size of the missing value. */
+  protected int m_MissingSize;
+
+  /** the scalars to re-use for writing numeric values, per column. */
+  protected Matrix[] m_Scalars;
+
+  /** the serialized sizes of the scalars, per column. */
+  protected int[] m_ScalarSizes;
+
+  /** the buffer for writing int8/uint8 columns. */
+  protected byte[] m_Bytes;
+
+  /** the buffer for writing int16/uint16 columns. */
+  protected short[] m_Shorts;
+
+  /** the buffer for writing int32/uint32 columns. */
+  protected int[] m_Ints;
+
+  /** the buffer for writing int64/uint64 columns. */
+  protected long[] m_Longs;
+
+  /** the buffer for writing single columns. */
+  protected float[] m_Floats;
+
+  /** the serialized size of the elements (excl. tag and header). */
+  protected long m_ContentSize;
+
+  /** the serialized sizes of the columns (excl. tag and header). */
+  protected long[] m_ColumnSizes;
+
+  /**
+   * Initializes the cell, storing dates as strings.
+   *
+   * @param data	the data to write
+   * @param layout	the layout to use
+   */
+  public MatlabMatDataCell(Instances data, int layout) {
+    this(data, layout, DATE_STRING);
+  }
+
+  /**
+   * Initializes the cell.
+   *
+   * @param data		the data to write
+   * @param layout		the layout to use
+   * @param dateEncoding	how to store dates
+   */
+  public MatlabMatDataCell(Instances data, int layout, int dateEncoding) {
+    this(data, layout, dateEncoding, false, null);
+  }
+
+  /**
+   * Initializes the cell.
+   *
+   * @param data		the data to write
+   * @param layout		the layout to use
+   * @param dateEncoding	how to store dates
+   * @param narrowTypes		whether to use the narrowest lossless type
+   *				for numeric columns rather than double (only
+   *				with the columns layout)
+   * @param types		the types to use for the numeric columns, null
+   *				entries (or null array) for automatic
+   * @throws IllegalArgumentException	if a type cannot represent the
+   * 					values of its column
+   * @see #determineTypes(Instances, int, int, boolean, MatlabType[])
+   */
+  public MatlabMatDataCell(Instances data, int layout, int dateEncoding, boolean narrowTypes, MatlabType[] types) {
+    this(data, layout, dateEncoding, determineTypes(data, layout, dateEncoding, narrowTypes, types));
+  }
+
+  /**
+   * Initializes the cell with types that have been determined already,
+   * eg for the whole dataset when writing it in blocks of rows.
+   *
+   * @param data		the data to write
+   * @param layout		the layout to use
+   * @param dateEncoding	how to store dates
+   * @param types		the types of all the numeric columns
+   * @see #determineTypes(Instances, int, int, boolean, MatlabType[])
+   */
+  public MatlabMatDataCell(Instances data, int layout, int dateEncoding, MatlabType[] types) {
+    super(layout == LAYOUT_COLUMNS ? Mat5.dims(1, data.numAttributes()) : Mat5.dims(data.numInstances(), data.numAttributes()));
+    m_Data         = data;
+    m_Layout       = layout;
+    m_DateEncoding = dateEncoding;
+    m_Types        = types;
+    initialize();
+  }
+
+  /**
+   * Turns the Weka date (msecs since 1970-01-01 UTC) into a number.
+   * NaN gets passed through.
+   *
+   * @param value	the date
+   * @param encoding	the encoding to use (datenum or posix)
+   * @return		the encoded date
+   */
+  public static double encodeDate(double value, int encoding) {
+    if (encoding == DATE_DATENUM)
+      return value / MSECS_PER_DAY + DATENUM_EPOCH;
+    else
+      return value / 1000.0;
+  }
+
+  /**
+   * Turns the number back into a Weka date (msecs since 1970-01-01 UTC).
+   * NaN gets passed through.
+   *
+   * @param value	the encoded date
+   * @param encoding	the encoding that was used (datenum or posix)
+   * @return		the date
+   */
+  public static double decodeDate(double value, int encoding) {
+    if (Double.isNaN(value))
+      return value;
+    if (encoding == DATE_DATENUM)
+      return Math.round((value - DATENUM_EPOCH) * MSECS_PER_DAY);
+    else
+      return Math.round(value * 1000.0);
+  }
+
+  /**
+   * Checks whether the type is a numeric Matlab class.
+   *
+   * @param type	the type to check
+   * @return		true if numeric
+   */
+  public static boolean isNumericType(MatlabType type) {
+    switch (type) {
+      case Double:
+      case Single:
+      case Int8:
+      case UInt8:
+      case Int16:
+      case UInt16:
+      case Int32:
+      case UInt32:
+      case Int64:
+      case UInt64:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns the numeric type with the specified Matlab class name.
+   *
+   * @param name	the class name, eg int8 or single
+   * @return		the type, null if not a numeric class
+   */
+  public static MatlabType parseType(String name) {
+    for (MatlabType type: MatlabType.values()) {
+      if (type.toString().equals(name) && isNumericType(type))
+        return type;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the smallest value of the integer type.
+   *
+   * @param type	the type
+   * @return		the minimum
+   */
+  public static double getMinimum(MatlabType type) {
+    switch (type) {
+      case Int8:
+        return Byte.MIN_VALUE;
+      case Int16:
+        return Short.MIN_VALUE;
+      case Int32:
+        return Integer.MIN_VALUE;
+      case Int64:
+        return Long.MIN_VALUE;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Returns the largest value of the integer type.
+   *
+   * @param type	the type
+   * @return		the maximum
+   */
+  public static double getMaximum(MatlabType type) {
+    switch (type) {
+      case Int8:
+        return Byte.MAX_VALUE;
+      case UInt8:
+        return 255;
+      case Int16:
+        return Short.MAX_VALUE;
+      case UInt16:
+        return 65535;
+      case Int32:
+        return Integer.MAX_VALUE;
+      case UInt32:
+        return 4294967295.0;
+      case Int64:
+        return Long.MAX_VALUE;
+      default:
+        return 2 * TWO_POW_63;
+    }
+  }
+
+  /**
+   * Determines the narrowest type that can represent the values of a column
+   * without loss.
+   *
+   * @param min		the smallest value
+   * @param max		the largest value
+   * @param integral	whether all values are integers (no missing values)
+   * @param single	whether all values can be represented as float
+   * @return		the type
+   */
+  public static MatlabType narrowType(double min, double max, boolean integral, boolean single) {
+    MatlabType[]	types;
+
+    if (integral) {
+      types = new MatlabType[]{MatlabType.Int8, MatlabType.UInt8, MatlabType.Int16, MatlabType.UInt16, MatlabType.Int32, MatlabType.UInt32};
+      for (MatlabType type: types) {
+        if ((min >= getMinimum(type)) && (max <= getMaximum(type)))
+          return type;
+      }
+    }
+    if (single)
+      return MatlabType.Single;
+    return MatlabType.Double;
+  }
+
+  /**
+   * Converts the value for the integer type like Matlab does: rounds to the
+   * nearest integer (ties away from zero), saturates at the limits of the
+   * type and turns NaN into 0. uint64 values above the range of long are
+   * returned as their two's complement bit pattern.
+   *
+   * @param value	the value to convert
+   * @param type	the integer type
+   * @return		the integer
+   */
+  public static long toInteger(double value, MatlabType type) {
+    if (Double.isNaN(value))
+      return 0;
+    value = Math.signum(value) * Math.floor(Math.abs(value) + 0.5);
+    value = Math.max(getMinimum(type), Math.min(getMaximum(type), value));
+    // (double) Long.MAX_VALUE is 2^63, int64 simply saturates via the cast
+    if ((type == MatlabType.UInt64) && (value >= TWO_POW_63))
+      return (long) (value - TWO_POW_63) + Long.MIN_VALUE;
+    return (long) value;
+  }
+
+  /**
+   * Checks whether the attribute gets written as number.
+   *
+   * @param att			the attribute to check
+   * @param dateEncoding	how to store dates
+   * @return			true if numeric
+   */
+  public static boolean isNumeric(Attribute att, int dateEncoding) {
+    return (att.type() == Attribute.NUMERIC) || (att.isDate() && (dateEncoding != DATE_STRING));
+  }
+
+  /**
+   * Determines the types of the numeric columns. Without narrowing, columns
+   * are stored as double. With narrowing (only applies to the columns
+   * layout, as every element of the cell layout is a separate array with
+   * its own header and padding), the data gets scanned for the narrowest
+   * lossless type. User-specified types get checked against the values:
+   * integer classes cannot store missing values or values outside their
+   * range, single cannot store values beyond the float range. Values that
+   * get rounded or lose precision result in a warning on stderr.
+   *
+   * @param data		the data to determine the types for
+   * @param layout		the layout to use
+   * @param dateEncoding	how to store dates
+   * @param narrowTypes		whether to use the narrowest lossless type
+   * @param overrides		the user-specified types, null entries (or null
+   *				array) for automatic
+   * @return			the types, null for non-numeric columns
+   * @throws IllegalArgumentException	if a type is not numeric, specified
+   * 					for a non-numeric column or cannot
+   * 					represent the values of its column
+   */
+  public static MatlabType[] determineTypes(Instances data, int layout, int dateEncoding, boolean narrowTypes, MatlabType[] overrides) {
+    MatlabType[]	result;
+    boolean[]		auto;
+    double[]		min;
+    double[]		max;
+    boolean[]		missing;
+    boolean[]		integral;
+    boolean[]		single;
+    double		value;
+    Instance		inst;
+    MatlabType		type;
+    int			i;
+    int			n;
+
+    result = new MatlabType[data.numAttributes()];
+    auto   = new boolean[data.numAttributes()];
+    for (i = 0; i < data.numAttributes(); i++) {
+      if ((overrides != null) && (overrides[i] != null)) {
+        if (!isNumeric(data.attribute(i), dateEncoding))
+          throw new IllegalArgumentException("Type can only be specified for numeric attributes: #" + (i + 1));
+        if (!isNumericType(overrides[i]))
+          throw new IllegalArgumentException("Not a numeric type for attribute #" + (i + 1) + ": " + overrides[i]);
+        result[i] = overrides[i];
+      }
+      else if (isNumeric(data.attribute(i), dateEncoding)) {
+        result[i] = MatlabType.Double;
+        auto[i]   = narrowTypes && (layout == LAYOUT_COLUMNS) && (data.numInstances() > 0);
+      }
+    }
+
+    // scan the columns that get narrowed or that have a user-specified type
+    min      = new double[data.numAttributes()];
+    max      = new double[data.numAttributes()];
+    missing  = new boolean[data.numAttributes()];
+    integral = new boolean[data.numAttributes()];
+    single   = new boolean[data.numAttributes()];
+    for (i = 0; i < data.numAttributes(); i++) {
+      min[i]      = Double.POSITIVE_INFINITY;
+      max[i]      = Double.NEGATIVE_INFINITY;
+      integral[i] = true;
+      single[i]   = true;
+    }
+    for (n = 0; n < data.numInstances(); n++) {
+      inst = data.instance(n);
+      for (i = 0; i < data.numAttributes(); i++) {
+        if (!auto[i] && ((result[i] == null) || (result[i] == MatlabType.Double)))
+          continue;
+        value = inst.value(i);
+        if (data.attribute(i).isDate())
+          value = encodeDate(value, dateEncoding);
+        if (Double.isNaN(value)) {
+          missing[i] = true;
+          continue;
+        }
+        if (value < min[i])
+          min[i] = value;
+        if (value > max[i])
+          max[i] = value;
+        if (integral[i] && (value != Math.rint(value)))
+          integral[i] = false;
+        if (single[i] && ((double) (float) value != value))
+          single[i] = false;
+      }
+    }
+
+    for (i = 0; i < data.numAttributes(); i++) {
+      if (auto[i]) {
+        result[i] = narrowType(min[i], max[i], integral[i] && !missing[i], single[i]);
+        continue;
+      }
+      type = result[i];
+      if ((type == null) || (type == MatlabType.Double) || (min[i] > max[i]))
+        continue;
+      if (type == MatlabType.Single) {
+        value = Math.max(Math.abs(min[i]), Math.abs(max[i]));
+        if (!Double.isInfinite(value) && (value > Float.MAX_VALUE))
+          throw new IllegalArgumentException("Values of attribute #" + (i + 1) + " exceed the range of " + type + ": " + min[i] + " to " + max[i]);
+        if (!single[i])
+          System.err.println("Values of attribute #" + (i + 1) + " lose precision when stored as " + type);
+        continue;
+      }
+      if (missing[i])
+        throw new IllegalArgumentException("Attribute #" + (i + 1) + " has missing values, which " + type + " cannot represent");
+      if ((min[i] < getMinimum(type)) || (max[i] > getMaximum(type)))
+        throw new IllegalArgumentException("Values of attribute #" + (i + 1) + " exceed the range of " + type + ": " + min[i] + " to " + max[i]);
+      if (!integral[i])
+        System.err.println("Values of attribute #" + (i + 1) + " get rounded when stored as " + type);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the serialized size of the numeric column (excl. tag and header
+   * in case of the columns layout).
+   *
+   * @param col		the column index
+   * @return		the size in bytes
+   */
+  protected long computeNumbersSize(int col) {
+    if (m_Layout == LAYOUT_COLUMNS)
+      return Mat5Type.fromNumericalType(m_Types[col]).computeSerializedSize(m_Data.numInstances());
+    else
+      return (long) m_ScalarSizes[col] * m_Data.numInstances();
+  }
+
+  /**
+   * Encodes the labels and determines the serialized sizes.
+   */
+  protected void initialize() {
+    int				i;
+    int				n;
+    int				index;
+    double			value;
+    Attribute			att;
+    long			size;
+    Map<MatlabType,Matrix>	scalars;
+
+    m_Missing     = Mat5.newString(MISSING_VALUE);
+    m_MissingSize = Mat5WriteUtil.computeArraySize(m_Missing);
+    m_Numeric     = new boolean[m_Data.numAttributes()];
+    m_Labels      = new Char[m_Data.numAttributes()][];
+    m_LabelSizes  = new int[m_Data.numAttributes()][];
+    m_Strings     = new Char[m_Data.numAttributes()][];
+    m_ColumnSizes = new long[m_Data.numAttributes()];
+    m_Scalars     = new Matrix[m_Data.numAttributes()];
+    m_ScalarSizes = new int[m_Data.numAttributes()];
+    m_ContentSize = 0;
+
+    for (i = 0; i < m_Data.numAttributes(); i++)
+      m_Numeric[i] = isNumeric(m_Data.attribute(i), m_DateEncoding);
+    if (m_Layout == LAYOUT_CELL) {
+      scalars = new HashMap<MatlabType,Matrix>();
+      for (i = 0; i < m_Data.numAttributes(); i++) {
+        if (!m_Numeric[i])
+          continue;
+        if (!scalars.containsKey(m_Types[i]))
+          scalars.put(m_Types[i], Mat5.newMatrix(1, 1, m_Types[i]));
+        m_Scalars[i]     = scalars.get(m_Types[i]);
+        m_ScalarSizes[i] = Mat5WriteUtil.computeArraySize(m_Scalars[i]);
+      }
+    }
+
+    for (i = 0; i < m_Data.numAttributes(); i++) {
+      att  = m_Data.attribute(i);
+      size = 0;
+      switch (att.type()) {
+        case Attribute.NUMERIC:
+          size = computeNumbersSize(i);
+          break;
+
+        case Attribute.NOMINAL:
+        case Attribute.STRING:
+          m_Labels[i]     = new Char[att.numValues()];
+          m_LabelSizes[i] = new int[att.numValues()];
+          for (n = 0; n < m_Data.numInstances(); n++) {
+            value = m_Data.instance(n).value(i);
+            if (Double.isNaN(value)) {
+              size += m_MissingSize;
+              continue;
+            }
+            index = (int) value;
+            if (m_Labels[i][index] == null) {
+              m_Labels[i][index]     = Mat5.newString(att.value(index));
+              m_LabelSizes[i][index] = Mat5WriteUtil.computeArraySize(m_Labels[i][index]);
+            }
+            size += m_LabelSizes[i][index];
+          }
+          break;
+
+        default:
+          if (m_Numeric[i]) {
+            size = computeNumbersSize(i);
+            break;
+          }
+          m_Strings[i] = new Char[m_Data.numInstances()];
+          for (n = 0; n < m_Data.numInstances(); n++) {
+            if (m_Data.instance(n).isMissing(i)) {
+              m_Strings[i][n] = m_Missing;
+              size += m_MissingSize;
+            }
+            else {
+              m_Strings[i][n] = Mat5.newString(m_Data.instance(n).stringValue(i));
+              size += Mat5WriteUtil.computeArraySize(m_Strings[i][n]);
+            }
+          }
+          break;
+      }
+
+      m_ColumnSizes[i] = size;
+      if (m_Layout == LAYOUT_COLUMNS)
+        m_ContentSize += 8 + Mat5WriteUtil.computeArrayHeaderSize("", new Column(i)) + size;
+      else
+        m_ContentSize += size;
+    }
+  }
+
+  /**
+   * Returns the type of the array.
+   *
+   * @return		always cell
+   */
+  public MatlabType getType() {
+    return MatlabType.Cell;
+  }
+
+  /**
+   * Returns whether the array is logical.
+   *
+   * @return		always false
+   */
+  public boolean isLogical() {
+    return false;
+  }
+
+  /**
+   * Returns whether the array is complex.
+   *
+   * @return		always false
+   */
+  public boolean isComplex() {
+    return false;
+  }
+
+  /**
+   * Returns the maximum number of non-zero elements (sparse only).
+   *
+   * @return		always 0
+   */
+  public int getNzMax() {
+    return 0;
+  }
+
+  /**
+   * Returns the serialized size, including tag and header.
+   *
+   * @param name	the name of the entry
+   * @return		the size in bytes
+   */
+  public int getMat5Size(String name) {
+    long	result;
+
+    result = 8 + Mat5WriteUtil.computeArrayHeaderSize(name, this) + m_ContentSize;
+    if (result > Integer.MAX_VALUE)
+      throw new IllegalStateException("Data too large for a single .mat entry: " + result + " bytes");
+
+    return (int) result;
+  }
+
+  /**
+   * Returns the number of columns to gather at a time.
+   *
+   * @return		the number of columns
+   */
+  protected int getBlockSize() {
+    if (m_Data.numInstances() == 0)
+      return m_Data.numAttributes();
+    return Math.max(1, MAX_BUFFER_SIZE / m_Data.numInstances());
+  }
+
+  /**
+   * Gathers the values of the specified columns, row by row. Dates get
+   * encoded afterwards.
+   *
+   * @param buffer	the buffer to fill (columns x rows)
+   * @param start	the first column
+   * @param end		the last column (excl)
+   */
+  protected void gather(double[][] buffer, int start, int end) {
+    int		n;
+    int		i;
+    Instance	inst;
+
+    for (n = 0; n < m_Data.numInstances(); n++) {
+      inst = m_Data.instance(n);
+      for (i = start; i < end; i++)
+        buffer[i - start][n] = inst.value(i);
+    }
+
+    for (i = start; i < end; i++) {
+      if (m_Numeric[i] && m_Data.attribute(i).isDate()) {
+        for (n = 0; n < m_Data.numInstances(); n++)
+          buffer[i - start][n] = encodeDate(buffer[i - start][n], m_DateEncoding);
+      }
+    }
+  }
+
+  /**
+   * Writes the labels/strings of the non-numeric column to the sink.
+   *
+   * @param col		the column index
+   * @param values	the values of the column
+   * @param sink	the sink to write to
+   * @throws IOException	if writing fails
+   */
+  protected void writeStrings(int col, double[] values, Sink sink) throws IOException {
+    int		n;
+
+    for (n = 0; n < m_Data.numInstances(); n++) {
+      if (m_Strings[col] != null)
+        Mat5WriteUtil.writeNestedArray(m_Strings[col][n], sink);
+      else if (Double.isNaN(values[n]))
+        Mat5WriteUtil.writeNestedArray(m_Missing, sink);
+      else
+        Mat5WriteUtil.writeNestedArray(m_Labels[col][(int) values[n]], sink);
+    }
+  }
+
+  /**
+   * Writes the numeric column to the sink, converting the values to the
+   * type of the column.
+   *
+   * @param col		the column index
+   * @param values	the values of the column
+   * @param sink	the sink to write to
+   * @throws IOException	if writing fails
+   */
+  protected void writeNumbers(int col, double[] values, Sink sink) throws IOException {
+    MatlabType	type;
+    Mat5Type	mat5Type;
+    Matrix	scalar;
+    int		n;
+
+    type = m_Types[col];
+    if (m_Layout == LAYOUT_COLUMNS) {
+      mat5Type = Mat5Type.fromNumericalType(type);
+      mat5Type.writeTag(values.length, sink);
+      switch (type) {
+        case Double:
+          sink.writeDoubles(values, 0, values.length);
+          break;
+        case Single:
+          if (m_Floats == null)
+            m_Floats = new float[values.length];
+          for (n = 0; n < values.length; n++)
+            m_Floats[n] = (float) values[n];
+          sink.writeFloats(m_Floats, 0, values.length);
+          break;
+        case Int8:
+        case UInt8:
+          if (m_Bytes == null)
+            m_Bytes = new byte[values.length];
+          for (n = 0; n < values.length; n++)
+            m_Bytes[n] = (byte) toInteger(values[n], type);
+          sink.writeBytes(m_Bytes, 0, values.length);
+          break;
+        case Int16:
+        case UInt16:
+          if (m_Shorts == null)
+            m_Shorts = new short[values.length];
+          for (n = 0; n < values.length; n++)
+            m_Shorts[n] = (short) toInteger(values[n], type);
+          sink.writeShorts(m_Shorts, 0, values.length);
+          break;
+        case Int32:
+        case UInt32:
+          if (m_Ints == null)
+            m_Ints = new int[values.length];
+          for (n = 0; n < values.length; n++)
+            m_Ints[n] = (int) toInteger(values[n], type);
+          sink.writeInts(m_Ints, 0, values.length);
+          break;
+        default:
+          if (m_Longs == null)
+            m_Longs = new long[values.length];
+          for (n = 0; n < values.length; n++)
+            m_Longs[n] = toInteger(values[n], type);
+          sink.writeLongs(m_Longs, 0, values.length);
+          break;
+      }
+      mat5Type.writePadding(values.length, sink);
+    }
+    else {
+      scalar = m_Scalars[col];
+      for (n = 0; n < values.length; n++) {
+        if ((type == MatlabType.Double) || (type == MatlabType.Single))
+          scalar.setDouble(0, values[n]);
+        else
+          scalar.setLong(0, toInteger(values[n], type));
+        Mat5WriteUtil.writeNestedArray(scalar, sink);
+      }
+    }
+  }
+
+  /**
+   * Serializes the cell.
+   *
+   * @param name	the name of the entry
+   * @param isGlobal	whether the entry is global
+   * @param sink	the sink to write to
+   * @throws IOException	if writing fails
+   */
+  public void writeMat5(String name, boolean isGlobal, Sink sink) throws IOException {
+    double[][]	buffer;
+    int		blockSize;
+    int		start;
+    int		end;
+    int		i;
+    Column	column;
+
+    Mat5WriteUtil.writeMatrixTag(name, this, sink);
+    Mat5WriteUtil.writeArrayHeader(name, isGlobal, this, sink);
+
+    blockSize = Math.min(getBlockSize(), Math.max(1, m_Data.numAttributes()));
+    buffer    = new double[blockSize][m_Data.numInstances()];
+    for (start = 0; start < m_Data.numAttributes(); start += blockSize) {
+      end = Math.min(start + blockSize, m_Data.numAttributes());
+      gather(buffer, start, end);
+      for (i = start; i < end; i++) {
+        if (m_Layout == LAYOUT_COLUMNS) {
+          column = new Column(i);
+          Mat5WriteUtil.writeMatrixTag("", column, sink);
+          Mat5WriteUtil.writeArrayHeader("", false, column, sink);
+        }
+        if (m_Numeric[i])
+          writeNumbers(i, buffer[i - start], sink);
+        else
+          writeStrings(i, buffer[i - start], sink);
+      }
+    }
+  }
+
+  /**
+   * Does nothing.
+   */
+  public void close() {
+  }
+
+  /**
+   * Returns the hashcode.
+   *
+   * @return		the hashcode of the data
+   */
+  @Override
+  protected int subHashCode() {
+    return m_Data.hashCode();
+  }
+
+  /**
+   * Checks whether the other object is the same.
+   *
+   * @param other	the object to compare with
+   * @return		true if based on the same data and layout
+   */
+  @Override
+  protected boolean subEqualsGuaranteedSameClass(Object other) {
+    MatlabMatDataCell	cell;
+
+    cell = (MatlabMatDataCell) other;
+    return (cell.m_Data == m_Data) && (cell.m_Layout == m_Layout);
+  }
+
+  /**
+   * Represents a single column in the columns layout, used for generating
+   * the tag and header of the column.
+   */
+  protected class Column
+    extends AbstractArray
+    implements Mat5Serializable, Mat5Serializable.Mat5Attributes {
+
+    /** the column index. */
+    protected int m_Index;
+
+    /**
+     * Initializes the column.
+     *
+     * @param index	the column index
+     */
+    public Column(int index) {
+      super(Mat5.dims(m_Data.numInstances(), 1));
+      m_Index = index;
+    }
+
+    /**
+     * Returns the type of the column.
+     *
+     * @return		the numeric type or cell
+     */
+    public MatlabType getType() {
+      return m_Numeric[m_Index] ? m_Types[m_Index] : MatlabType.Cell;
+    }
+
+    /**
+     * Returns whether the array is logical.
+     *
+     * @return		always false
+     */
+    public boolean isLogical() {
+      return false;
+    }
+
+    /**
+     * Returns whether the array is complex.
+     *
+     * @return		always false
+     */
+    public boolean isComplex() {
+      return false;
+    }
+
+    /**
+     * Returns the maximum number of non-zero elements (sparse only).
+     *
+     * @return		always 0
+     */
+    public int getNzMax() {
+      return 0;
+    }
+
+    /**
+     * Returns the serialized size, including tag and header.
+     *
+     * @param name	the name of the entry
+     * @return		the size in bytes
+     */
+    public int getMat5Size(String name) {
+      return (int) (8 + Mat5WriteUtil.computeArrayHeaderSize(name, this) + m_ColumnSizes[m_Index]);
+    }
+
+    /**
+     * Not supported, the enclosing cell writes the content.
+     *
+     * @param name	the name of the entry
+     * @param isGlobal	whether the entry is global
+     * @param sink	the sink to write to
+     */
+    public void writeMat5(String name, boolean isGlobal, Sink sink) {
+      throw new UnsupportedOperationException("Written by enclosing cell!");
+    }
+
+    /**
+     * Does nothing.
+     */
+    public void close() {
+    }
+
+    /**
+     * Returns the hashcode.
+     *
+     * @return		the column index
+     */
+    @Override
+    protected int subHashCode() {
+      return m_Index;
+    }
+
+    /**
+     * Checks whether the other object is the same.
+     *
+     * @param other	the object to compare with
+     * @return		true if the same column index
+     */
+    @Override
+    protected boolean subEqualsGuaranteedSameClass(Object other) {
+      return ((Column) other).m_Index == m_Index;
+    }
+  }
+}
@@ -21,12 +21,10 @@
 
 package weka.core.converters;
 
-import us.hebi.matlab.mat.format.Mat5;
 import us.hebi.matlab.mat.format.Mat5File;
 import us.hebi.matlab.mat.types.AbstractCharBase;
 import us.hebi.matlab.mat.types.Cell;
 import us.hebi.matlab.mat.types.Char;
-import us.hebi.matlab.mat.types.MatFile;
 import us.hebi.matlab.mat.types.Matrix;
 import weka.core.Attribute;
 import weka.core.DenseInstance;
@@ -35,15 +33,19 @@ import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
+import weka.core.SelectedTag;
 import weka.core.Utils;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -51,7 +53,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Reads binary Matlab .mat files.
@@ -61,7 +65,7 @@ import java.util.zip.GZIPInputStream;
  */
 public class MatlabMatLoader
   extends AbstractFileLoader
-  implements BatchConverter, OptionHandler {
+  implements BatchConverter, IncrementalConverter, OptionHandler {
 
   /** for serialization */
   private static final long serialVersionUID = 3764533621135196582L;
@@ -72,18 +76,72 @@ public class MatlabMatLoader
   /** the default entry name. */
   public final static String DEFAULT_ENTRY_NAME = "";
 
+  /** the regular expression for the suffix of blocks of rows. */
+  public final static String BLOCK_SUFFIX = "_[0-9]{4,}";
+
   /** the name of the entry to retrieve. */
   protected String m_EntryName = DEFAULT_ENTRY_NAME;
 
+  /** the name of the entry with the header information. */
+  protected String m_EntryNameMeta = MatlabMatSaver.DEFAULT_ENTRY_NAME_META;
+
   /** the default max number of values for nominal attributes. */
   public final static int DEFAULT_MAX_NOMINAL_VALUES = 25;
 
   /** the maximum number of values for nominal attributes. */
   protected int m_MaxNominalValues = DEFAULT_MAX_NOMINAL_VALUES;
 
+  /** the default number of blocks to decode ahead when loading incrementally. */
+  public final static int DEFAULT_PREFETCH = 1;
+
+  /** the number of blocks to decode ahead when loading incrementally. */
+  protected int m_Prefetch = DEFAULT_PREFETCH;
+
+  /** whether to output the metrics on stderr. */
+  protected boolean m_Verbose = false;
+
+  /** whether to estimate the allocated bytes. */
+  protected boolean m_MeasureAllocations = false;
+
   /** the loaded data. */
   protected Instances m_Data;
 
+  /** the names of the data entries (or blocks of rows) to load. */
+  protected transient List<String> m_DataNames;
+
+  /** the name of the header entry, null if not available. */
+  protected transient String m_MetaName;
+
+  /** the header entry used for loading incrementally. */
+  protected transient Cell m_Meta;
+
+  /** the Level 5 file the header entry was read from. */
+  protected transient Mat5File m_MetaFile;
+
+  /** the Level 5 file used for loading incrementally. */
+  protected transient MatlabMat5Reader m_Reader5;
+
+  /** the v7.3 file used for loading incrementally. */
+  protected transient MatlabMat73Reader m_Reader73;
+
+  /** the thread decoding the blocks ahead. */
+  protected transient BlockPrefetcher m_Prefetcher;
+
+  /** the index of the next block to return, -1 if not started. */
+  protected int m_NextBlock = -1;
+
+  /** the block that instances are currently returned from. */
+  protected transient Instances m_Block;
+
+  /** the next row in the current block. */
+  protected transient int m_BlockRow;
+
+  /** the metrics of the last load. */
+  protected MatlabMatMetrics m_Metrics;
+
+  /** the listeners for the metrics. */
+  protected transient List<MatlabMatMetricsListener> m_MetricsListeners;
+
   /**
    * Returns a string describing this Loader
    *
@@ -91,7 +149,12 @@ public class MatlabMatLoader
    * 			displaying in the explorer/experimenter gui
    */
   public String globalInfo() {
-    return "Reads binary Matlab .mat files.";
+    return "Reads binary Matlab .mat files (Level 5 and v7.3).\n"
+      + "NaN values and empty values ('' or []) are loaded as missing values.\n"
+      + "If the file contains a header entry as generated by the "
+      + MatlabMatSaver.class.getSimpleName() + ", the attributes (incl dates "
+      + "and relational ones) get restored from that, which also allows "
+      + "loading the data incrementally, one block of rows at a time.";
   }
 
   /**
@@ -119,7 +182,38 @@ public class MatlabMatLoader
    *         explorer/experimenter gui
    */
   public String entryNameTipText() {
-    return "The entry name to retrieve; first if empty.";
+    return "The entry name to retrieve; first if empty; blocks of rows "
+      + "(eg data_0001, data_0002, ...) get reassembled when using the name "
+      + "without suffix (eg data).";
+  }
+
+  /**
+   * Sets the entry with the header information; ignored if empty.
+   *
+   * @param value	the name
+   */
+  public void setEntryNameMeta(String value) {
+    m_EntryNameMeta = value;
+  }
+
+  /**
+   * Returns the entry with the header information; ignored if empty.
+   *
+   * @return		the name
+   */
+  public String getEntryNameMeta() {
+    return m_EntryNameMeta;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String entryNameMetaTipText() {
+    return "The entry with the header information (as generated by the saver), "
+      + "used for restoring the attributes; ignored if empty or not present.";
   }
 
   /**
@@ -154,6 +248,140 @@ public class MatlabMatLoader
       + "nominal and 0 to always convert to string.";
   }
 
+  /**
+   * Sets the number of blocks to decode ahead when loading incrementally.
+   *
+   * @param value	the number of blocks, 0 to decode in the calling thread
+   */
+  public void setPrefetch(int value) {
+    if (value >= 0)
+      m_Prefetch = value;
+    else
+      System.err.println("Prefetch must be at least 0, provided: " + value);
+  }
+
+  /**
+   * Returns the number of blocks to decode ahead when loading incrementally.
+   *
+   * @return		the number of blocks, 0 to decode in the calling thread
+   */
+  public int getPrefetch() {
+    return m_Prefetch;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String prefetchTipText() {
+    return "The number of blocks of rows to read and convert ahead in a separate "
+      + "thread when loading incrementally, overlapping I/O with the processing "
+      + "of the current block; 0 reads the blocks in the calling thread.";
+  }
+
+  /**
+   * Sets whether to output the load metrics on stderr.
+   *
+   * @param value	true if to output
+   */
+  public void setVerbose(boolean value) {
+    m_Verbose = value;
+  }
+
+  /**
+   * Returns whether to output the load metrics on stderr.
+   *
+   * @return		true if to output
+   */
+  public boolean getVerbose() {
+    return m_Verbose;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String verboseTipText() {
+    return "If enabled, the entries in the file, the timings of the load phases, "
+      + "bytes, rows and columns are output on stderr.";
+  }
+
+  /**
+   * Sets whether to estimate the bytes allocated during loading.
+   *
+   * @param value	true if to estimate
+   */
+  public void setMeasureAllocations(boolean value) {
+    m_MeasureAllocations = value;
+  }
+
+  /**
+   * Returns whether to estimate the bytes allocated during loading.
+   *
+   * @return		true if to estimate
+   */
+  public boolean getMeasureAllocations() {
+    return m_MeasureAllocations;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String measureAllocationsTipText() {
+    return "If enabled, the bytes allocated by the loading thread (and the "
+      + "prefetching thread) get estimated as part of the metrics (if supported "
+      + "by the JVM).";
+  }
+
+  /**
+   * Adds the listener for the metrics.
+   *
+   * @param l		the listener to add
+   */
+  public synchronized void addMetricsListener(MatlabMatMetricsListener l) {
+    if (m_MetricsListeners == null)
+      m_MetricsListeners = new ArrayList<MatlabMatMetricsListener>();
+    m_MetricsListeners.add(l);
+  }
+
+  /**
+   * Removes the listener for the metrics.
+   *
+   * @param l		the listener to remove
+   */
+  public synchronized void removeMetricsListener(MatlabMatMetricsListener l) {
+    if (m_MetricsListeners != null)
+      m_MetricsListeners.remove(l);
+  }
+
+  /**
+   * Returns the metrics of the last load.
+   *
+   * @return		the metrics, null if nothing loaded yet
+   */
+  public MatlabMatMetrics getMetrics() {
+    return m_Metrics;
+  }
+
+  /**
+   * Outputs the metrics (if verbose) and notifies all listeners.
+   */
+  protected synchronized void notifyMetricsListeners() {
+    if (m_Verbose)
+      System.err.println("Metrics for: " + retrieveFile() + "\n" + m_Metrics);
+    if (m_MetricsListeners == null)
+      return;
+    for (MatlabMatMetricsListener l: m_MetricsListeners)
+      l.metricsAvailable(this, m_Metrics);
+  }
+
   /**
    * Get the file extension used for libsvm files
    *
@@ -193,12 +421,31 @@ public class MatlabMatLoader
       + "\t(default: " + DEFAULT_ENTRY_NAME + ")",
       "entry-name", 1, "-entry-name <name>"));
 
+    result.addElement(new Option("\tThe entry name with the header information;\n"
+      + "\tignored if empty or not present\n"
+      + "\t(default: " + MatlabMatSaver.DEFAULT_ENTRY_NAME_META + ")",
+      "entry-name-meta", 1, "-entry-name-meta <name>"));
+
     result.addElement(new Option("\tThe maximum number of distinct values a NOMINAL attribute\n"
       + "\tcan have; beyond that it is considered a STRING attribute.\n"
       + "\tUse -1 to always convert to NOMINAL, 0 to always convert to STRING.\n"
       + "\t(default: " + DEFAULT_MAX_NOMINAL_VALUES + ")",
       "max-nominal-values", 1, "-max-nominal-values <int>"));
 
+    result.addElement(new Option("\tThe number of blocks of rows to decode ahead in a\n"
+      + "\tseparate thread when loading incrementally; 0 to decode\n"
+      + "\tin the calling thread.\n"
+      + "\t(default: " + DEFAULT_PREFETCH + ")",
+      "prefetch", 1, "-prefetch <int>"));
+
+    result.addElement(new Option("\tOutputs the entries in the file, the timings of the\n"
+      + "\tload phases, bytes, rows and columns on stderr.",
+      "verbose", 0, "-verbose"));
+
+    result.addElement(new Option("\tEstimates the bytes allocated during loading, including\n"
+      + "\tthe prefetching thread (if supported by the JVM).",
+      "measure-allocations", 0, "-measure-allocations"));
+
     return result.elements();
   }
 
@@ -218,12 +465,27 @@ public class MatlabMatLoader
     else
       setEntryName(DEFAULT_ENTRY_NAME);
 
+    if (Utils.getOptionPos("entry-name-meta", options) > -1)
+      setEntryNameMeta(Utils.getOption("entry-name-meta", options));
+    else
+      setEntryNameMeta(MatlabMatSaver.DEFAULT_ENTRY_NAME_META);
+
     tmp = Utils.getOption("max-nominal-values", options);
     if (!tmp.isEmpty())
       setMaxNominalValues(Integer.parseInt(tmp));
     else
       setMaxNominalValues(DEFAULT_MAX_NOMINAL_VALUES);
 
+    tmp = Utils.getOption("prefetch", options);
+    if (!tmp.isEmpty())
+      setPrefetch(Integer.parseInt(tmp));
+    else
+      setPrefetch(DEFAULT_PREFETCH);
+
+    setVerbose(Utils.getFlag("verbose", options));
+
+    setMeasureAllocations(Utils.getFlag("measure-allocations", options));
+
     Utils.checkForRemainingOptions(options);
   }
 
@@ -240,9 +502,21 @@ public class MatlabMatLoader
     result.add("-entry-name");
     result.add(getEntryName());
 
+    result.add("-entry-name-meta");
+    result.add(getEntryNameMeta());
+
     result.add("-max-nominal-values");
     result.add("" + getMaxNominalValues());
 
+    result.add("-prefetch");
+    result.add("" + getPrefetch());
+
+    if (getVerbose())
+      result.add("-verbose");
+
+    if (getMeasureAllocations())
+      result.add("-measure-allocations");
+
     return result.toArray(new String[0]);
   }
 
@@ -252,8 +526,12 @@ public class MatlabMatLoader
    * @throws IOException        if something goes wrong
    */
   public void reset() throws IOException {
+    stopBlocks();
     m_structure = null;
     m_Data      = null;
+    m_Meta      = null;
+    m_DataNames = null;
+    m_NextBlock = -1;
 
     setRetrieval(NONE);
 
@@ -269,23 +547,21 @@ public class MatlabMatLoader
    * @throws IOException        if an error occurs
    */
   public void setSource(File file) throws IOException {
+    stopBlocks();
     m_structure = null;
     m_Data      = null;
+    m_Meta      = null;
+    m_DataNames = null;
+    m_NextBlock = -1;
 
     setRetrieval(NONE);
 
     if (file == null)
       throw new IOException("Source file object is null!");
 
-    try {
-      if (file.getName().endsWith(FILE_EXTENSION_COMPRESSED))
-	setSource(new GZIPInputStream(new FileInputStream(file)));
-      else
-	setSource(new FileInputStream(file));
-    }
-    catch (FileNotFoundException ex) {
+    // the file gets opened when reading, not kept open via a stream
+    if (!file.isFile())
       throw new IOException("File not found");
-    }
 
     m_sourceFile = file;
     m_File       = file.getAbsolutePath();
@@ -305,7 +581,8 @@ public class MatlabMatLoader
   /**
    * Determines and returns (if possible) the structure (internally the 
    * header) of the data set as an empty set of instances.
-   * If not yet read, also reads the full dataset into m_Data.
+   * Uses the header entry if available, otherwise reads the full dataset
+   * into m_Data.
    *
    * @return 			the structure of the data set as an empty set 
    * 				of Instances
@@ -316,7 +593,8 @@ public class MatlabMatLoader
       return new Instances(m_structure, 0);
 
     try {
-      return new Instances(getDataSet(), 0);
+      determineStructure();
+      return new Instances(m_structure, 0);
     }
     catch (IOException ioe) {
       // just re-throw it
@@ -328,25 +606,207 @@ public class MatlabMatLoader
   }
 
   /**
-   * Performs the actual conversion.
+   * Checks whether the cell uses the columns layout of the saver, i.e., a
+   * 1 x attributes cell with a column vector (matrix or cell) per attribute.
+   *
+   * @param cell	the cell to check
+   * @return		true if columns layout
+   * @see MatlabMatSaver#TAGS_LAYOUT
+   */
+  protected boolean isColumnsLayout(Cell cell) {
+    int					i;
+    int					rows;
+    boolean				nested;
+    us.hebi.matlab.mat.types.Array	column;
+
+    if ((cell.getNumRows() != 1) || (cell.getNumCols() == 0))
+      return false;
+
+    rows   = -1;
+    nested = false;
+    for (i = 0; i < cell.getNumCols(); i++) {
+      column = cell.get(0, i);
+      if (!(column instanceof Matrix) && !(column instanceof Cell))
+        return false;
+      if ((column.getNumCols() != 1) && (column.getNumElements() > 0))
+        return false;
+      if ((rows > -1) && (column.getNumRows() != rows))
+        return false;
+      rows = column.getNumRows();
+      if (column instanceof Cell)
+        nested = true;
+    }
+
+    return nested || (rows != 1);
+  }
+
+  /**
+   * Turns the array into a string. Empty arrays (eg '' or []) are
+   * considered missing values.
+   *
+   * @param element	the array to convert
+   * @return		the string, null if missing
+   */
+  protected String toString(us.hebi.matlab.mat.types.Array element) {
+    if (element.getNumElements() == 0)
+      return null;
+    if (element instanceof AbstractCharBase)
+      return ((AbstractCharBase) element).asCharSequence().toString();
+    return element.toString();
+  }
+
+  /**
+   * Parses the header entry generated by the saver, using the attribute
+   * formats (third row).
+   *
+   * @param meta	the header entry
+   * @param numCols	the number of columns in the data
+   * @return		the header, null if not compatible or failed to parse
+   * @see MatlabMatSaver#writeHeader(Mat5File, Instances)
+   */
+  protected Instances parseMeta(Cell meta, int numCols) {
+    StringBuilder	header;
+    String		format;
+    int			i;
+
+    if ((meta.getNumRows() < 3) || (meta.getNumCols() != numCols + 1)) {
+      System.err.println("Header entry '" + m_EntryNameMeta + "' does not match data, ignored!");
+      return null;
+    }
+
+    header = new StringBuilder("@relation meta\n\n");
+    for (i = 0; i < numCols; i++) {
+      format = toString(meta.get(2, i + 1));
+      if (format == null)
+        return null;
+      header.append(format).append("\n");
+    }
+    header.append("\n@data\n");
+
+    try {
+      return new Instances(new StringReader(header.toString()));
+    }
+    catch (Exception e) {
+      System.err.println("Failed to parse header entry '" + m_EntryNameMeta + "', ignored: " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Determines how the dates were stored, using the header entry generated
+   * by the saver (fourth row).
+   *
+   * @param meta	the header entry, can be null
+   * @param numCols	the number of columns in the data
+   * @return		the encodings (string by default)
+   * @see MatlabMatSaver#TAGS_DATE_ENCODING
+   */
+  protected int[] parseDateEncodings(Cell meta, int numCols) {
+    int[]	result;
+    String	encoding;
+    int		i;
+
+    result = new int[numCols];
+    Arrays.fill(result, MatlabMatDataCell.DATE_STRING);
+    if ((meta == null) || (meta.getNumCols() != numCols + 1) || !hasEncodings(meta))
+      return result;
+
+    for (i = 0; i < numCols; i++) {
+      encoding = toString(meta.get(3, i + 1));
+      if (encoding == null)
+        continue;
+      try {
+        result[i] = new SelectedTag(encoding, MatlabMatSaver.TAGS_DATE_ENCODING).getSelectedTag().getID();
+      }
+      catch (Exception e) {
+        System.err.println("Unknown date encoding for column #" + (i + 1) + ": " + encoding);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Checks whether the header entry has the fourth row with the date
+   * encodings. Older versions of the saver only wrote name, type and format
+   * and stored missing values in the data as "?".
+   *
+   * @param meta	the header entry
+   * @return		true if the encoding row is present
+   */
+  protected boolean hasEncodings(Cell meta) {
+    return (meta.getNumRows() >= 4) && "encoding".equals(toString(meta.get(3, 0)));
+  }
+
+  /**
+   * Parses the value of a relational attribute.
+   *
+   * @param att		the relational attribute
+   * @param value	the value to parse (data rows without header)
+   * @return		the parsed relation
+   * @throws IOException	if parsing fails
+   */
+  protected Instances parseRelation(Attribute att, String value) throws IOException {
+    try {
+      return new Instances(new StringReader(new Instances(att.relation(), 0).toString() + value));
+    }
+    catch (Exception e) {
+      throw new IOException("Failed to parse value of relational attribute '" + att.name() + "': " + value, e);
+    }
+  }
+
+  /**
+   * Performs the actual conversion. NaN values in numeric columns and
+   * empty values (eg '' or []) in cells are turned into missing values.
    *
    * @param array	the array to convert
    * @throws IOException if something goes wrong with the conversion
    * @return the converted data
    */
   protected Instances convert(us.hebi.matlab.mat.types.Array array) throws IOException {
+    return convert(array, null, null);
+  }
+
+  /**
+   * Performs the actual conversion. NaN values in numeric columns and
+   * empty values (eg '' or []) in cells are turned into missing values.
+   * If available, the attributes get restored from the header entry.
+   * Does not modify the state of the loader, hence it can be used for
+   * converting blocks in a separate thread.
+   *
+   * @param array	the array to convert
+   * @param meta	the header entry generated by the saver, can be null
+   * @param metrics	the metrics of the calling thread to record the
+   * 			phases, rows and columns in, can be null
+   * @throws IOException if something goes wrong with the conversion
+   * @return the converted data
+   */
+  protected Instances convert(us.hebi.matlab.mat.types.Array array, Cell meta, MatlabMatMetrics metrics) throws IOException {
     Matrix			matrix;
     Char 			matChar;
     Cell 			matCell;
+    Cell			column;
+    us.hebi.matlab.mat.types.Array[]	columns;
+    us.hebi.matlab.mat.types.Array	element;
+    int				numRows;
+    int				numCols;
     int				i;
     int				n;
-    Object[][]			data;
+    double[][]			numbers;
+    String[][]			strings;
     boolean[]			numeric;
     ArrayList<Attribute>	atts;
+    Attribute			att;
     double[]			values;
-    String			cell;
-    Map<Integer,Set<String>> 	unique;
+    Set<String> 		unique;
     List<String>		labels;
+    Instances			header;
+    int[]			encodings;
+    boolean			legacy;
+    String			str;
+    int				index;
+    MatlabMatBufferPool		pool;
+    Instances			result;
 
     if (array.getNumDimensions() > 2)
       throw new IllegalStateException("Cannot handle arrays with more than two dimensions, received: " + array.getNumDimensions());
@@ -361,87 +821,420 @@ public class MatlabMatLoader
       matChar = (Char) array;
     if ((matrix == null) && (matCell == null) && (matChar == null))
       throw new IllegalStateException("Unhandled array type: " + array.getClass().getName());
+    numRows = array.getNumRows();
+    numCols = array.getNumCols();
+    columns = null;
+    if ((matCell != null) && isColumnsLayout(matCell)) {
+      columns = new us.hebi.matlab.mat.types.Array[numCols];
+      for (i = 0; i < numCols; i++)
+        columns[i] = matCell.get(0, i);
+      numRows = columns[0].getNumRows();
+    }
 
-    // convert matrix
-    data = new Object[array.getNumRows()][array.getNumCols()];
-    numeric = new boolean[array.getNumCols()];
-    for (i = 0; i < numeric.length; i++)
-      numeric[i] = true;
-    for (n = 0; n < array.getNumRows(); n++) {
-      for (i = 0; i < array.getNumCols(); i++) {
+    // convert matrix, column by column
+    if (metrics != null)
+      metrics.startPhase(MatlabMatMetrics.PHASE_CONVERT);
+    pool    = MatlabMatBufferPool.getDefault();
+    numbers = new double[numCols][];
+    strings = new String[numCols][];
+    try {
+      numeric = new boolean[numCols];
+      for (i = 0; i < numCols; i++) {
+        numeric[i] = true;
         if (matrix != null) {
-	  data[n][i] = matrix.getDouble(n, i);
-	}
-        else if (matCell != null) {
-          if (matCell.get(n, i) instanceof AbstractCharBase) {
-	    data[n][i] = ((AbstractCharBase) matCell.get(n, i)).asCharSequence().toString();
-	    numeric[i] = false;
-	  }
-          else {
-            cell = matCell.get(n, i).toString();
-            try {
-              data[n][i] = Double.parseDouble(cell);
-	    }
-	    catch (Exception e) {
-              data[n][i] = cell;
-	      numeric[i] = false;
-	    }
-	  }
-	}
+          numbers[i] = pool.acquireDoubles(numRows);
+          for (n = 0; n < numRows; n++)
+            numbers[i][n] = matrix.getDouble(n, i);
+        }
         else if (matChar != null) {
-	  data[n][i] = matChar.getChar(n, i);
+          strings[i] = pool.acquireStrings(numRows);
+          for (n = 0; n < numRows; n++)
+            strings[i][n] = String.valueOf(matChar.getChar(n, i));
           numeric[i] = false;
-	}
+        }
+        else if ((columns != null) && (columns[i] instanceof Matrix)) {
+          numbers[i] = pool.acquireDoubles(numRows);
+          for (n = 0; n < numRows; n++)
+            numbers[i][n] = ((Matrix) columns[i]).getDouble(n);
+        }
+        else if (columns != null) {
+          column     = (Cell) columns[i];
+          strings[i] = pool.acquireStrings(numRows);
+          for (n = 0; n < numRows; n++)
+            strings[i][n] = toString(column.get(n));
+          numeric[i] = false;
+        }
+        else {
+          numbers[i] = pool.acquireDoubles(numRows);
+          strings[i] = pool.acquireStrings(numRows);
+          for (n = 0; n < numRows; n++) {
+            element = matCell.get(n, i);
+            if (element.getNumElements() == 0) {
+              numbers[i][n] = Utils.missingValue();
+            }
+            else if ((element instanceof Matrix) && (element.getNumElements() == 1)) {
+              numbers[i][n] = ((Matrix) element).getDouble(0);
+            }
+            else if (element instanceof AbstractCharBase) {
+              strings[i][n] = toString(element);
+              numeric[i]    = false;
+            }
+            else {
+              strings[i][n] = toString(element);
+              try {
+                numbers[i][n] = Double.parseDouble(strings[i][n]);
+              }
+              catch (Exception e) {
+                numeric[i] = false;
+              }
+            }
+          }
+          if (numeric[i]) {
+            pool.releaseStrings(strings[i]);
+            strings[i] = null;
+          }
+          else {
+            for (n = 0; n < numRows; n++) {
+              if ((strings[i][n] == null) && !Double.isNaN(numbers[i][n]))
+                strings[i][n] = toString(matCell.get(n, i));
+            }
+            pool.releaseDoubles(numbers[i]);
+            numbers[i] = null;
+          }
+        }
+      }
+
+      // create dataset
+      // 1. header
+      if (metrics != null)
+        metrics.startPhase(MatlabMatMetrics.PHASE_NOMINAL);
+      header    = null;
+      legacy    = false;
+      encodings = parseDateEncodings(meta, numCols);
+      if (meta != null)
+        header = parseMeta(meta, numCols);
+      if (header != null)
+        legacy = !hasEncodings(meta);
+      if (header != null) {
+        // only numeric attributes can take the values as they are
+        for (i = 0; i < numCols; i++)
+          numeric[i] = (numbers[i] != null) && (header.attribute(i).type() == Attribute.NUMERIC);
+        result = new Instances(header, numRows);
+        result.setRelationName(retrieveFile().getName());
+      }
+      else {
+        atts = new ArrayList<Attribute>();
+        for (i = 0; i < numCols; i++) {
+          if (numeric[i]) {
+            atts.add(new Attribute("col-" + (i + 1)));
+          }
+          else {
+            // determine unique values
+            unique = new HashSet<String>();
+            for (n = 0; n < numRows; n++) {
+              if (strings[i][n] != null)
+                unique.add(strings[i][n]);
+            }
+            // nominal
+            if ((m_MaxNominalValues == -1) || (unique.size() <= m_MaxNominalValues)) {
+              labels = new ArrayList<String>(unique);
+              Collections.sort(labels);
+              atts.add(new Attribute("col-" + (i + 1), labels));
+            }
+            // string
+            else {
+              atts.add(new Attribute("col-" + (i + 1), (List<String>) null));
+            }
+          }
+        }
+        result = new Instances(retrieveFile().getName(), atts, numRows);
+      }
+
+      // 2. data
+      if (metrics != null)
+        metrics.startPhase(MatlabMatMetrics.PHASE_INSTANCES);
+      for (n = 0; n < numRows; n++) {
+        values = new double[numCols];
+        for (i = 0; i < numCols; i++) {
+          if (numeric[i]) {
+            values[i] = numbers[i][n];
+            continue;
+          }
+          att = result.attribute(i);
+          if ((att.type() == Attribute.DATE) && (numbers[i] != null)) {
+            values[i] = MatlabMatDataCell.decodeDate(numbers[i][n], encodings[i]);
+            continue;
+          }
+          if (strings[i] != null)
+            str = strings[i][n];
+          else if (Double.isNaN(numbers[i][n]))
+            str = null;
+          else
+            str = Utils.doubleToString(numbers[i][n], 12);
+          // older saver versions wrote missing values as "?"
+          if (legacy && "?".equals(str))
+            str = null;
+          if (str == null) {
+            values[i] = Utils.missingValue();
+            continue;
+          }
+          switch (att.type()) {
+            case Attribute.NUMERIC:
+              try {
+                values[i] = Double.parseDouble(str);
+              }
+              catch (Exception e) {
+                throw new IOException("Failed to parse number for attribute '" + att.name() + "': " + str);
+              }
+              break;
+            case Attribute.DATE:
+              try {
+                values[i] = att.parseDate(str);
+              }
+              catch (Exception e) {
+                throw new IOException("Failed to parse date for attribute '" + att.name() + "': " + str);
+              }
+              break;
+            case Attribute.NOMINAL:
+              index = att.indexOfValue(str);
+              if (index == -1)
+                throw new IOException("Unknown label for attribute '" + att.name() + "': " + str);
+              values[i] = index;
+              break;
+            case Attribute.STRING:
+              values[i] = att.addStringValue(str);
+              break;
+            case Attribute.RELATIONAL:
+              values[i] = att.addRelation(parseRelation(att, str));
+              break;
+            default:
+              throw new IOException("Unhandled attribute type: " + Attribute.typeToString(att));
+          }
+        }
+        result.add(new DenseInstance(1.0, values));
+      }
+      if (metrics != null) {
+        metrics.stopPhase();
+        metrics.addNumRows(numRows);
+        metrics.setNumCols(numCols);
+      }
+    }
+    finally {
+      // scratch columns go back to the pool
+      for (i = 0; i < numCols; i++) {
+        pool.releaseDoubles(numbers[i]);
+        pool.releaseStrings(strings[i]);
       }
     }
 
-    // determine unique values
-    unique = new HashMap<Integer, Set<String>>();
-    for (i = 0; i < array.getNumCols(); i++) {
-      if (!numeric[i]) {
-	for (n = 0; n < array.getNumRows(); n++) {
-	  if (!unique.containsKey(i))
-	    unique.put(i, new HashSet<String>());
-	  unique.get(i).add((String) data[n][i]);
-	}
+    return result;
+  }
+
+  /**
+   * Returns the names of the blocks of rows (eg data_0001, data_0002, ...)
+   * that the saver generated for the data entry, sorted by their index.
+   *
+   * @param names	the names of all the entries
+   * @param name	the name of the data entry
+   * @return		the names of the blocks, empty if none
+   * @see MatlabMatSaver#getBlockEntryName(String, int)
+   */
+  protected List<String> findBlocks(List<String> names, String name) {
+    final Map<String,Integer>	indices;
+    List<String>		result;
+
+    indices = new HashMap<String,Integer>();
+    result  = new ArrayList<String>();
+    if (name.isEmpty())
+      return result;
+    for (String n: names) {
+      if (n.startsWith(name) && n.substring(name.length()).matches(BLOCK_SUFFIX)) {
+        result.add(n);
+        indices.put(n, Integer.parseInt(n.substring(name.length() + 1)));
       }
     }
+    Collections.sort(result, new Comparator<String>() {
+      public int compare(String o1, String o2) {
+        return indices.get(o1).compareTo(indices.get(o2));
+      }
+    });
+
+    return result;
+  }
+
+  /**
+   * Appends the rows of the block to the data, taking care of string and
+   * relational values.
+   *
+   * @param data	the data to append to
+   * @param block	the block to append
+   * @param name	the name of the block
+   * @throws IOException	if the block's attributes differ
+   */
+  protected void append(Instances data, Instances block, String name) throws IOException {
+    String	msg;
+    Instance	inst;
+    int		i;
+    int		n;
 
-    // create dataset
-    // 1. header
-    atts = new ArrayList<Attribute>();
-    for (i = 0; i < numeric.length; i++) {
-      if (numeric[i]) {
-	atts.add(new Attribute("col-" + (i + 1)));
+    msg = data.stringFreeStructure().equalHeadersMsg(block.stringFreeStructure());
+    if (msg != null)
+      throw new IOException("Block '" + name + "' is incompatible with previous ones: " + msg);
+
+    for (n = 0; n < block.numInstances(); n++) {
+      inst = block.instance(n);
+      for (i = 0; i < block.numAttributes(); i++) {
+        if (inst.isMissing(i))
+          continue;
+        if (block.attribute(i).isString())
+          inst.setValue(i, data.attribute(i).addStringValue(inst.stringValue(i)));
+        else if (block.attribute(i).isRelationValued())
+          inst.setValue(i, data.attribute(i).addRelation(inst.relationalValue(i)));
       }
-      else {
-        // nominal
-        if ((m_MaxNominalValues == -1) || (unique.get(i).size() <= m_MaxNominalValues)) {
-          labels = new ArrayList<String>(unique.get(i));
-          Collections.sort(labels);
-	  atts.add(new Attribute("col-" + (i + 1), labels));
-	}
-        // string
-        else {
-	  atts.add(new Attribute("col-" + (i + 1), (List<String>) null));
-	}
+      inst.setDataset(null);
+      data.add(inst);
+    }
+  }
+
+  /**
+   * Determines the data entry (or the blocks of rows) and the header entry
+   * to load, stored in m_DataNames and m_MetaName.
+   *
+   * @param names	the names of all the entries in the file
+   * @throws IOException	if no data entry found
+   */
+  protected void selectEntries(List<String> names) throws IOException {
+    String	dataName;
+    String	metaName;
+    int		i;
+
+    dataName = null;
+    metaName = null;
+    if (m_Verbose)
+      System.err.println("Entries in: " + retrieveFile());
+    for (i = 0; i < names.size(); i++) {
+      if (m_Verbose)
+        System.err.println((i+1) + ": " + names.get(i));
+      if (!m_EntryNameMeta.isEmpty() && names.get(i).equals(m_EntryNameMeta)) {
+        metaName = names.get(i);
+        if (!names.get(i).equals(m_EntryName))
+          continue;
       }
+      if (names.get(i).equals(m_EntryName) || (m_EntryName.isEmpty() && (dataName == null)))
+        dataName = names.get(i);
     }
-    m_Data = new Instances(retrieveFile().getName(), atts, array.getNumRows());
+    // only the header entry present?
+    if ((dataName == null) && m_EntryName.isEmpty() && (metaName != null)) {
+      dataName = metaName;
+      metaName = null;
+    }
+    // blocks of rows?
+    m_DataNames = new ArrayList<String>();
+    if (dataName == null)
+      m_DataNames.addAll(findBlocks(names, m_EntryName));
+    else if (m_EntryName.isEmpty() && dataName.matches(".*" + BLOCK_SUFFIX))
+      m_DataNames.addAll(findBlocks(names, dataName.replaceAll(BLOCK_SUFFIX + "$", "")));
+    if (m_DataNames.isEmpty() && (dataName != null))
+      m_DataNames.add(dataName);
+    if (m_DataNames.isEmpty())
+      throw new IOException("Failed to load array with name: " + m_EntryName);
+    if (m_DataNames.contains(metaName))
+      metaName = null;
+    if (m_Verbose && (m_DataNames.size() > 1))
+      System.err.println("Blocks: " + m_DataNames);
+    m_MetaName = metaName;
+  }
 
-    // 2. data
-    for (n = 0; n < array.getNumRows(); n++) {
-      values = new double[m_Data.numAttributes()];
-      for (i = 0; i < array.getNumCols(); i++) {
-        if (m_Data.attribute(i).isNumeric())
-          values[i] = (Double) data[n][i];
-        else if (m_Data.attribute(i).isNominal())
-          values[i] = m_Data.attribute(i).indexOfValue((String) data[n][i]);
+  /**
+   * Reads and converts all the data entries (or blocks of rows).
+   *
+   * @return			the data
+   * @throws IOException        if there is no source or parsing fails
+   */
+  protected Instances loadAll() throws IOException {
+    MatlabMat73Reader			reader73;
+    MatlabMat5Reader			reader5;
+    Mat5File				metaFile;
+    Mat5File				mat5;
+    List<String>			names;
+    us.hebi.matlab.mat.types.Array	header;
+    Cell				meta;
+    Instances				block;
+    Instances				current;
+    int					i;
+
+    m_Metrics = new MatlabMatMetrics(m_MeasureAllocations);
+    m_Metrics.start();
+    m_Metrics.startPhase(MatlabMatMetrics.PHASE_READ);
+    reader73 = null;
+    reader5  = null;
+    metaFile = null;
+    names    = new ArrayList<String>();
+    if (MatlabMat73Reader.isMat73(retrieveFile())) {
+      reader73 = new MatlabMat73Reader(retrieveFile());
+      names.addAll(reader73.getEntryNames());
+    }
+    else {
+      reader5 = new MatlabMat5Reader(retrieveFile());
+      names.addAll(reader5.getEntryNames());
+    }
+
+    // only read the selected entries, one block at a time
+    block = null;
+    try {
+      selectEntries(names);
+      header = null;
+      if (m_MetaName != null) {
+        if (reader73 != null) {
+          header = reader73.getArray(m_MetaName);
+        }
+        else {
+          metaFile = reader5.read(Collections.singletonList(m_MetaName));
+          header   = metaFile.getArray(m_MetaName);
+        }
+      }
+      meta = null;
+      if (header instanceof Cell)
+        meta = (Cell) header;
+      m_Metrics.stopPhase();
+
+      for (i = 0; i < m_DataNames.size(); i++) {
+        m_Metrics.startPhase(MatlabMatMetrics.PHASE_READ);
+        if (reader73 != null) {
+          current = convert(reader73.getArray(m_DataNames.get(i)), meta, m_Metrics);
+        }
+        else {
+          mat5 = reader5.read(Collections.singletonList(m_DataNames.get(i)));
+          try {
+            current = convert(mat5.getArray(m_DataNames.get(i)), meta, m_Metrics);
+          }
+          finally {
+            // returns the decode buffers to the pool
+            mat5.close();
+          }
+        }
+        if (block == null)
+          block = current;
         else
-          values[i] = m_Data.attribute(i).addStringValue((String) data[n][i]);
+          append(block, current, m_DataNames.get(i));
+      }
+    }
+    finally {
+      if (reader73 != null) {
+        m_Metrics.addBytesRead(reader73.getBytesRead());
+        reader73.close();
+      }
+      if (metaFile != null)
+        metaFile.close();
+      if (reader5 != null) {
+        m_Metrics.addBytesRead(reader5.getBytesRead());
+        reader5.close();
       }
-      m_Data.add(new DenseInstance(1.0, values));
     }
+    m_Data      = block;
+    m_structure = new Instances(m_Data, 0);
+    m_Metrics.stop();
+    notifyMetricsListeners();
 
     return m_Data;
   }
@@ -456,44 +1249,291 @@ public class MatlabMatLoader
    * @throws IOException        if there is no source or parsing fails
    */
   public Instances getDataSet() throws IOException {
-    Mat5File				mat5;
-    us.hebi.matlab.mat.types.Array	array;
-    int					i;
-
     if (getRetrieval() == INCREMENTAL)
       throw new IOException("Cannot mix getting Instances in both incremental and batch modes");
 
     setRetrieval(BATCH);
+    stopBlocks();
 
-    mat5  = Mat5.readFromFile(retrieveFile());
-    array = null;
-    i     = 0;
-    System.err.println("Entries in: " + retrieveFile());
-    for (MatFile.Entry entry: mat5.getEntries()) {
-      System.err.println((i+1) + ": " + entry.getName());
-      if (entry.getName().equals(m_EntryName) || (m_EntryName.isEmpty() && (array == null)))
-        array = entry.getValue();
-      i++;
-    }
-    if (array == null)
-      throw new IOException("Failed to load array with name: " + m_EntryName);
+    // already read when determining the structure?
+    if (m_Data != null)
+      return m_Data;
 
-    m_Data = convert(array);
-    m_structure = new Instances(m_Data, 0);
+    return loadAll();
+  }
 
-    return m_Data;
+  /**
+   * Determines the structure from the header entry, only reading the entry
+   * names and the header entry. If there is no (compatible) header entry,
+   * the attributes can only be inferred from the data, hence all of it gets
+   * read.
+   *
+   * @throws IOException	if reading fails
+   */
+  protected void determineStructure() throws IOException {
+    MatlabMat73Reader			reader;
+    List<String>			names;
+    us.hebi.matlab.mat.types.Array	header;
+
+    stopBlocks();
+    names  = new ArrayList<String>();
+    header = null;
+    if (MatlabMat73Reader.isMat73(retrieveFile())) {
+      reader = new MatlabMat73Reader(retrieveFile());
+      try {
+        names.addAll(reader.getEntryNames());
+        selectEntries(names);
+        if (m_MetaName != null)
+          header = reader.getArray(m_MetaName);
+      }
+      finally {
+        reader.close();
+      }
+    }
+    else {
+      // the entry positions get determined once and the file stays open
+      // for reading the blocks; the header's buffers stay in use until the
+      // loader is reset
+      m_Reader5 = new MatlabMat5Reader(retrieveFile());
+      names.addAll(m_Reader5.getEntryNames());
+      selectEntries(names);
+      if (m_MetaName != null) {
+        m_MetaFile = m_Reader5.read(Collections.singletonList(m_MetaName));
+        header     = m_MetaFile.getArray(m_MetaName);
+      }
+    }
+
+    m_Meta      = null;
+    m_structure = null;
+    if (header instanceof Cell) {
+      m_Meta      = (Cell) header;
+      m_structure = parseMeta(m_Meta, m_Meta.getNumCols() - 1);
+    }
+    if (m_structure == null) {
+      m_Meta = null;
+      loadAll();
+      // the instances get returned from the loaded data, which mustn't
+      // share the string/relational attributes with the structure
+      m_structure = m_Data.stringFreeStructure();
+    }
+    else {
+      m_structure.setRelationName(retrieveFile().getName());
+    }
+  }
+
+  /**
+   * Reads and converts the data entry (or block of rows) with the specified
+   * name, using the header entry determined with the structure. Only reads
+   * the state of the loader, hence it gets used by the prefetching thread
+   * as well.
+   *
+   * @param name	the name of the entry
+   * @param metrics	the metrics of the calling thread to record the
+   * 			phases, rows and columns in
+   * @return		the converted data
+   * @throws IOException	if reading or converting fails
+   */
+  protected Instances readBlock(String name, MatlabMatMetrics metrics) throws IOException {
+    Mat5File	mat5;
+
+    metrics.startPhase(MatlabMatMetrics.PHASE_READ);
+    if (m_Reader73 != null)
+      return convert(m_Reader73.getArray(name), m_Meta, metrics);
+
+    mat5 = m_Reader5.read(Collections.singletonList(name));
+    try {
+      return convert(mat5.getArray(name), m_Meta, metrics);
+    }
+    finally {
+      // returns the decode buffers to the pool
+      mat5.close();
+    }
   }
 
   /**
-   * CommonCSVLoader is unable to process a data set incrementally.
+   * Starts the incremental loading of the blocks, with a separate thread
+   * decoding them ahead if prefetching is enabled. If all the data was
+   * read already (no header entry), that gets returned as single block.
    *
-   * @param structure		ignored
-   * @return 			never returns without throwing an exception
-   * @throws IOException        always. CommonCSVLoader is unable to process a
-   * 				data set incrementally.
+   * @throws IOException	if opening the file fails
+   */
+  protected void startBlocks() throws IOException {
+    m_NextBlock = 0;
+    m_Block     = null;
+    m_BlockRow  = 0;
+
+    if (m_Meta == null) {
+      m_Block     = m_Data;
+      m_Data      = null;
+      m_DataNames = new ArrayList<String>();
+      return;
+    }
+
+    m_Metrics = new MatlabMatMetrics(m_MeasureAllocations);
+    m_Metrics.start();
+    if (MatlabMat73Reader.isMat73(retrieveFile()))
+      m_Reader73 = new MatlabMat73Reader(retrieveFile());
+    else if (m_Reader5 == null)
+      m_Reader5 = new MatlabMat5Reader(retrieveFile());
+    if (m_Prefetch > 0) {
+      m_Prefetcher = new BlockPrefetcher(
+        this, (m_Reader73 != null) ? m_Reader73 : m_Reader5, new ArrayList<String>(m_DataNames), m_Prefetch);
+      m_Prefetcher.start();
+    }
+  }
+
+  /**
+   * Returns the next block, either from the prefetching thread or by
+   * reading it.
+   *
+   * @return		the block, null if no more blocks
+   * @throws IOException	if reading fails
+   */
+  protected Instances nextBlock() throws IOException {
+    Instances	result;
+    String	msg;
+
+    if ((m_DataNames == null) || (m_NextBlock >= m_DataNames.size()))
+      return null;
+
+    if (m_Prefetcher != null)
+      result = m_Prefetcher.nextBlock(m_Metrics);
+    else
+      result = readBlock(m_DataNames.get(m_NextBlock), m_Metrics);
+    msg = m_structure.stringFreeStructure().equalHeadersMsg(result.stringFreeStructure());
+    if (msg != null)
+      throw new IOException("Block '" + m_DataNames.get(m_NextBlock) + "' is incompatible with header: " + msg);
+    m_NextBlock++;
+
+    return result;
+  }
+
+  /**
+   * Stops the incremental loading, waiting for the prefetching thread to
+   * finish, and releases all resources.
+   */
+  protected void stopBlocks() {
+    if (m_Prefetcher != null) {
+      m_Prefetcher.cancel();
+      try {
+        m_Prefetcher.join();
+      }
+      catch (InterruptedException e) {
+        // ignored
+      }
+      if (m_Metrics != null)
+        m_Metrics.addAllocatedBytes(m_Prefetcher.getAllocatedBytes());
+      m_Prefetcher = null;
+    }
+    if (m_Reader73 != null) {
+      try {
+        m_Reader73.close();
+      }
+      catch (IOException e) {
+        // ignored
+      }
+      m_Reader73 = null;
+    }
+    if (m_MetaFile != null) {
+      try {
+        m_MetaFile.close();
+      }
+      catch (IOException e) {
+        // ignored
+      }
+      m_MetaFile = null;
+    }
+    if (m_Reader5 != null) {
+      try {
+        m_Reader5.close();
+      }
+      catch (IOException e) {
+        // ignored
+      }
+      m_Reader5 = null;
+    }
+    m_Block = null;
+  }
+
+  /**
+   * Finishes the incremental loading once all blocks have been returned.
+   */
+  protected void finishBlocks() {
+    if (m_DataNames == null)
+      return;
+    if (!m_DataNames.isEmpty()) {
+      if (m_Reader5 != null)
+        m_Metrics.addBytesRead(m_Reader5.getBytesRead());
+      if (m_Reader73 != null)
+        m_Metrics.addBytesRead(m_Reader73.getBytesRead());
+    }
+    stopBlocks();
+    if (!m_DataNames.isEmpty()) {
+      m_Metrics.stop();
+      notifyMetricsListeners();
+    }
+    m_DataNames = null;
+  }
+
+  /**
+   * Read the data set incrementally---get the next instance in the data
+   * set or returns null if there are no more instances to get. The blocks
+   * of rows get read one at a time, with the next ones getting decoded
+   * in a separate thread while the current one is being processed (see
+   * prefetch option). String values are only stored for the current
+   * instance.
+   *
+   * @param structure		the dataset header information, will get
+   *				updated in case of string or relational
+   *				attributes
+   * @return			the next instance in the data set as an
+   * 				Instance object or null if there are no more
+   * 				instances to be read
+   * @throws IOException        if there is an error during parsing
    */
   public Instance getNextInstance(Instances structure) throws IOException {
-    throw new IOException("Incremental loading not supported!");
+    Instance	inst;
+    Instance	result;
+    double[]	values;
+    Attribute	att;
+    int		i;
+
+    if (getRetrieval() == BATCH)
+      throw new IOException("Cannot mix getting Instances in both incremental and batch modes");
+
+    setRetrieval(INCREMENTAL);
+    if (m_structure == null)
+      getStructure();
+    if (m_NextBlock == -1)
+      startBlocks();
+
+    while ((m_Block == null) || (m_BlockRow >= m_Block.numInstances())) {
+      m_Block    = nextBlock();
+      m_BlockRow = 0;
+      if (m_Block == null) {
+        finishBlocks();
+        return null;
+      }
+    }
+
+    inst   = m_Block.instance(m_BlockRow++);
+    values = inst.toDoubleArray();
+    for (i = 0; i < values.length; i++) {
+      if (inst.isMissing(i))
+        continue;
+      att = m_structure.attribute(i);
+      if (att.isString()) {
+        att.setStringValue(inst.stringValue(i));
+        values[i] = 0;
+      }
+      else if (att.isRelationValued()) {
+        values[i] = att.addRelation(inst.relationalValue(i));
+      }
+    }
+    result = new DenseInstance(inst.weight(), values);
+    result.setDataset(m_structure);
+
+    return result;
   }
 
   /**
@@ -505,6 +1545,74 @@ public class MatlabMatLoader
     return RevisionUtils.extract("$Revision: 1 $");
   }
 
+  /**
+   * Takes over the settings and the metrics listeners of the other loader,
+   * without parsing any options. The other loader does not get modified.
+   *
+   * @param other	the loader to take the settings from
+   */
+  protected void assignSettings(MatlabMatLoader other) {
+    m_EntryName          = other.getEntryName();
+    m_EntryNameMeta      = other.getEntryNameMeta();
+    m_MaxNominalValues   = other.getMaxNominalValues();
+    m_Prefetch           = other.getPrefetch();
+    m_Verbose            = other.getVerbose();
+    m_MeasureAllocations = other.getMeasureAllocations();
+    m_useRelativePath    = other.getUseRelativePath();
+    synchronized (other) {
+      if (other.m_MetricsListeners != null)
+        m_MetricsListeners = new ArrayList<MatlabMatMetricsListener>(other.m_MetricsListeners);
+    }
+  }
+
+  /**
+   * Loads the .mat file using the supplied options. Safe to call from
+   * multiple threads concurrently, as each call uses its own loader;
+   * the decode buffers and scratch arrays are shared via a lock-free pool.
+   * The options get parsed with every call, use
+   * {@link #loadWithSettings(File, MatlabMatLoader)} to only parse them once.
+   *
+   * @param file	the file to load
+   * @param options	the options for the loader, can be null
+   * @return		the loaded data
+   * @throws Exception	if setting the options or loading fails
+   * @see MatlabMatBufferPool
+   */
+  public static Instances load(File file, String[] options) throws Exception {
+    MatlabMatLoader	settings;
+
+    settings = new MatlabMatLoader();
+    if (options != null)
+      settings.setOptions(options.clone());
+
+    return loadWithSettings(file, settings);
+  }
+
+  /**
+   * Loads the .mat file using the settings of the supplied loader, which
+   * only serves as configuration (eg set up once from options) and does
+   * not get modified. Safe to call from multiple threads concurrently, as
+   * each call uses its own lightweight loader that just takes over the
+   * settings; the decode buffers and scratch arrays are shared via a
+   * lock-free pool. Metrics listeners of the supplied loader get notified
+   * from the calling threads.
+   *
+   * @param file	the file to load
+   * @param settings	the loader to take the settings from
+   * @return		the loaded data
+   * @throws IOException	if loading fails
+   * @see MatlabMatBufferPool
+   */
+  public static Instances loadWithSettings(File file, MatlabMatLoader settings) throws IOException {
+    MatlabMatLoader	loader;
+
+    loader = new MatlabMatLoader();
+    loader.assignSettings(settings);
+    loader.setFile(file);
+
+    return loader.getDataSet();
+  }
+
   /**
    * Main method.
    *
@@ -513,4 +1621,219 @@ public class MatlabMatLoader
   public static void main(String[] args) {
     runFileLoader(new MatlabMatLoader(), args);
   }
+
+  /**
+   * A block of rows converted by the prefetching thread, together with the
+   * metrics recorded while reading and converting it.
+   */
+  protected static class PrefetchedBlock {
+
+    /** the converted data. */
+    protected Instances m_Data;
+
+    /** the metrics of the block. */
+    protected MatlabMatMetrics m_Metrics;
+
+    /**
+     * Initializes the block.
+     *
+     * @param data	the converted data
+     * @param metrics	the metrics of the block
+     */
+    public PrefetchedBlock(Instances data, MatlabMatMetrics metrics) {
+      m_Data    = data;
+      m_Metrics = metrics;
+    }
+
+    /**
+     * Returns the converted data.
+     *
+     * @return		the data
+     */
+    public Instances getData() {
+      return m_Data;
+    }
+
+    /**
+     * Returns the metrics of the block.
+     *
+     * @return		the metrics
+     */
+    public MatlabMatMetrics getMetrics() {
+      return m_Metrics;
+    }
+  }
+
+  /**
+   * Thread that reads and converts the blocks of rows ahead of the
+   * consumer, handing them over via a bounded queue. The metrics of each
+   * block are recorded separately and handed over with the block, the
+   * thread does not modify the state of the loader. Only holds a weak
+   * reference to the loader while waiting for space in the queue, so that
+   * the thread finishes (and closes the file) if the consumer stops early
+   * and discards the loader without resetting it.
+   */
+  protected static class BlockPrefetcher
+    extends Thread {
+
+    /** how long to wait for space in the queue before checking the owner (msec). */
+    protected final static long OFFER_TIMEOUT = 1000;
+
+    /** the loader that the blocks get read for. */
+    protected WeakReference<MatlabMatLoader> m_Owner;
+
+    /** the file to close if the loader got discarded. */
+    protected Closeable m_Reader;
+
+    /** the names of the blocks to read. */
+    protected List<String> m_Names;
+
+    /** the converted blocks with their metrics (or the error that occurred). */
+    protected BlockingQueue<Object> m_Queue;
+
+    /** whether to measure the allocated bytes. */
+    protected boolean m_MeasureAllocations;
+
+    /** the bytes allocated by the thread, -1 if not measured. */
+    protected volatile long m_AllocatedBytes;
+
+    /** whether reading got cancelled. */
+    protected volatile boolean m_Cancelled;
+
+    /**
+     * Initializes the thread.
+     *
+     * @param owner	the loader to read the blocks for
+     * @param reader	the file to close if the loader gets discarded
+     * @param names	the names of the blocks to read
+     * @param capacity	the number of blocks to read ahead
+     */
+    public BlockPrefetcher(MatlabMatLoader owner, Closeable reader, List<String> names, int capacity) {
+      super(MatlabMatLoader.class.getSimpleName() + "-prefetch");
+      setDaemon(true);
+      m_Owner              = new WeakReference<MatlabMatLoader>(owner);
+      m_Reader             = reader;
+      m_Names              = names;
+      m_Queue              = new ArrayBlockingQueue<Object>(capacity);
+      m_MeasureAllocations = owner.getMeasureAllocations();
+      m_AllocatedBytes     = -1;
+    }
+
+    /**
+     * Hands over the block or error, waiting for space in the queue as
+     * long as reading hasn't been cancelled and the loader is still in use.
+     *
+     * @param item	the block or error
+     * @return		true if handed over
+     * @throws InterruptedException	if interrupted while waiting
+     */
+    protected boolean handOver(Object item) throws InterruptedException {
+      while (!m_Queue.offer(item, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        if (m_Cancelled || (m_Owner.get() == null))
+          return false;
+      }
+      return true;
+    }
+
+    /**
+     * Reads the blocks, stops at the first error.
+     */
+    @Override
+    public void run() {
+      MatlabMatLoader	owner;
+      Instances		block;
+      MatlabMatMetrics	metrics;
+      long		start;
+      long		end;
+      int		i;
+
+      start = m_MeasureAllocations ? MatlabMatMetrics.threadAllocatedBytes() : -1;
+      try {
+        for (i = 0; i < m_Names.size(); i++) {
+          owner = m_Owner.get();
+          if (m_Cancelled || (owner == null))
+            break;
+          metrics = new MatlabMatMetrics(false);
+          block   = owner.readBlock(m_Names.get(i), metrics);
+          owner   = null;
+          if (!handOver(new PrefetchedBlock(block, metrics)))
+            break;
+        }
+      }
+      catch (InterruptedException e) {
+        // cancelled
+      }
+      catch (Throwable t) {
+        try {
+          handOver(t);
+        }
+        catch (InterruptedException e) {
+          // cancelled
+        }
+      }
+      finally {
+        if (start > -1) {
+          end = MatlabMatMetrics.threadAllocatedBytes();
+          if (end > -1)
+            m_AllocatedBytes = end - start;
+        }
+        // the loader can no longer release the file
+        if (m_Owner.get() == null) {
+          try {
+            m_Reader.close();
+          }
+          catch (IOException e) {
+            // ignored
+          }
+        }
+      }
+    }
+
+    /**
+     * Returns the next block, waiting for it if necessary. The metrics of
+     * the block get added to the metrics of the consumer.
+     *
+     * @param metrics	the metrics of the consumer
+     * @return		the block
+     * @throws IOException	if reading the block failed
+     */
+    public Instances nextBlock(MatlabMatMetrics metrics) throws IOException {
+      Object		result;
+      PrefetchedBlock	block;
+
+      try {
+        result = m_Queue.take();
+      }
+      catch (InterruptedException e) {
+        throw new IOException("Interrupted while waiting for next block!", e);
+      }
+      if (result instanceof IOException)
+        throw (IOException) result;
+      if (result instanceof Throwable)
+        throw new IOException("Failed to read next block!", (Throwable) result);
+
+      block = (PrefetchedBlock) result;
+      metrics.add(block.getMetrics());
+
+      return block.getData();
+    }
+
+    /**
+     * Returns the bytes allocated by the thread, available once finished.
+     *
+     * @return		the bytes, -1 if not measured
+     */
+    public long getAllocatedBytes() {
+      return m_AllocatedBytes;
+    }
+
+    /**
+     * Stops reading blocks. Clearing the queue lets a waiting thread hand
+     * over its block and finish.
+     */
+    public void cancel() {
+      m_Cancelled = true;
+      m_Queue.clear();
+    }
+  }
 }
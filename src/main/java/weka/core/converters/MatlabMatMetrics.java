@@ -0,0 +1,361 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatlabMatMetrics.java
+ * Copyright (C) 2026 FracPete
+ *
+ */
+
+package weka.core.converters;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects timings (in nanoseconds) of the individual phases of loading or
+ * saving a .mat file, as well as bytes, rows and columns processed.
+ * Optionally, an estimate of the bytes allocated by the current thread is
+ * recorded as well (only available on JVMs that support it).
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class MatlabMatMetrics
+  implements Serializable {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 2290862167839145062L;
+
+  /** the phase for reading the file. */
+  public final static String PHASE_READ = "read";
+
+  /** the phase for converting the Matlab array into Java objects. */
+  public final static String PHASE_CONVERT = "convert";
+
+  /** the phase for determining nominal values and the header. */
+  public final static String PHASE_NOMINAL = "nominal";
+
+  /** the phase for constructing the instances. */
+  public final static String PHASE_INSTANCES = "instances";
+
+  /** the phase for generating the header entry. */
+  public final static String PHASE_HEADER = "header";
+
+  /** the phase for writing the file (incl gathering the values of the data entry). */
+  public final static String PHASE_WRITE = "write";
+
+  /** the timings per phase (in nanoseconds). */
+  protected Map<String,Long> m_Timings;
+
+  /** the number of bytes read. */
+  protected long m_BytesRead;
+
+  /** the number of bytes written. */
+  protected long m_BytesWritten;
+
+  /** the number of rows processed. */
+  protected int m_NumRows;
+
+  /** the number of columns processed. */
+  protected int m_NumCols;
+
+  /** whether to measure allocations. */
+  protected boolean m_MeasureAllocations;
+
+  /** the allocated bytes (-1 if not measured). */
+  protected long m_AllocatedBytes;
+
+  /** the allocated bytes of the thread at the start. */
+  protected transient long m_AllocationStart;
+
+  /** the bytes allocated by other threads (eg prefetching). */
+  protected long m_OtherAllocatedBytes;
+
+  /** the start of the overall measurement. */
+  protected transient long m_Start;
+
+  /** the overall time (in nanoseconds). */
+  protected long m_TotalTime;
+
+  /** the current phase. */
+  protected transient String m_Phase;
+
+  /** the start of the current phase. */
+  protected transient long m_PhaseStart;
+
+  /**
+   * Initializes the metrics.
+   *
+   * @param measureAllocations	whether to estimate the allocated bytes
+   */
+  public MatlabMatMetrics(boolean measureAllocations) {
+    m_Timings            = new LinkedHashMap<String, Long>();
+    m_MeasureAllocations = measureAllocations;
+    m_AllocatedBytes     = -1;
+  }
+
+  /**
+   * Returns the bytes allocated so far by the current thread.
+   *
+   * @return		the bytes, -1 if not supported by the JVM
+   */
+  protected static long threadAllocatedBytes() {
+    ThreadMXBean	bean;
+
+    try {
+      bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean)
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    catch (Throwable t) {
+      // not supported
+    }
+    return -1;
+  }
+
+  /**
+   * Starts the overall measurement.
+   */
+  public void start() {
+    m_Start = System.nanoTime();
+    if (m_MeasureAllocations)
+      m_AllocationStart = threadAllocatedBytes();
+  }
+
+  /**
+   * Stops the overall measurement, also stops any running phase.
+   */
+  public void stop() {
+    long	current;
+
+    stopPhase();
+    m_TotalTime = System.nanoTime() - m_Start;
+    if (m_MeasureAllocations && (m_AllocationStart > -1)) {
+      current = threadAllocatedBytes();
+      if (current > -1)
+        m_AllocatedBytes = current - m_AllocationStart + m_OtherAllocatedBytes;
+    }
+  }
+
+  /**
+   * Adds the bytes allocated by another thread that worked on the same
+   * operation (eg decoding ahead). Must be called before {@link #stop()}.
+   *
+   * @param value	the bytes to add, ignored if negative
+   */
+  public void addAllocatedBytes(long value) {
+    if (value > 0)
+      m_OtherAllocatedBytes += value;
+  }
+
+  /**
+   * Starts the timing for the specified phase, stops any running phase.
+   * Timings of phases that are run multiple times get accumulated.
+   *
+   * @param phase	the phase to start
+   */
+  public void startPhase(String phase) {
+    stopPhase();
+    m_Phase      = phase;
+    m_PhaseStart = System.nanoTime();
+  }
+
+  /**
+   * Stops the timing of the current phase (if any).
+   */
+  public void stopPhase() {
+    long	duration;
+
+    if (m_Phase == null)
+      return;
+
+    duration = System.nanoTime() - m_PhaseStart;
+    if (m_Timings.containsKey(m_Phase))
+      duration += m_Timings.get(m_Phase);
+    m_Timings.put(m_Phase, duration);
+    m_Phase = null;
+  }
+
+  /**
+   * Adds the timings, bytes and rows of the other metrics, eg of a block
+   * that got converted in a separate thread. The columns get taken over,
+   * the allocated bytes of other threads get measured separately.
+   *
+   * @param other	the metrics to add
+   * @see #addAllocatedBytes(long)
+   */
+  public void add(MatlabMatMetrics other) {
+    long	duration;
+
+    for (String phase: other.m_Timings.keySet()) {
+      duration = other.m_Timings.get(phase);
+      if (m_Timings.containsKey(phase))
+        duration += m_Timings.get(phase);
+      m_Timings.put(phase, duration);
+    }
+    m_BytesRead    += other.m_BytesRead;
+    m_BytesWritten += other.m_BytesWritten;
+    m_NumRows      += other.m_NumRows;
+    m_NumCols       = other.m_NumCols;
+  }
+
+  /**
+   * Returns the timing for the phase.
+   *
+   * @param phase	the phase to get the timing for
+   * @return		the timing in nanoseconds, 0 if not available
+   */
+  public long getTiming(String phase) {
+    if (m_Timings.containsKey(phase))
+      return m_Timings.get(phase);
+    else
+      return 0;
+  }
+
+  /**
+   * Returns all the timings, in the order the phases were run.
+   *
+   * @return		the timings in nanoseconds (phase - timing)
+   */
+  public Map<String,Long> getTimings() {
+    return Collections.unmodifiableMap(m_Timings);
+  }
+
+  /**
+   * Returns the overall time.
+   *
+   * @return		the time in nanoseconds
+   */
+  public long getTotalTime() {
+    return m_TotalTime;
+  }
+
+  /**
+   * Adds the number of bytes read.
+   *
+   * @param value	the bytes
+   */
+  public void addBytesRead(long value) {
+    m_BytesRead += value;
+  }
+
+  /**
+   * Returns the number of bytes read.
+   *
+   * @return		the bytes
+   */
+  public long getBytesRead() {
+    return m_BytesRead;
+  }
+
+  /**
+   * Adds the number of bytes written.
+   *
+   * @param value	the bytes
+   */
+  public void addBytesWritten(long value) {
+    m_BytesWritten += value;
+  }
+
+  /**
+   * Returns the number of bytes written.
+   *
+   * @return		the bytes
+   */
+  public long getBytesWritten() {
+    return m_BytesWritten;
+  }
+
+  /**
+   * Adds the number of rows processed.
+   *
+   * @param value	the rows
+   */
+  public void addNumRows(int value) {
+    m_NumRows += value;
+  }
+
+  /**
+   * Returns the number of rows processed.
+   *
+   * @return		the rows
+   */
+  public int getNumRows() {
+    return m_NumRows;
+  }
+
+  /**
+   * Sets the number of columns processed.
+   *
+   * @param value	the columns
+   */
+  public void setNumCols(int value) {
+    m_NumCols = value;
+  }
+
+  /**
+   * Returns the number of columns processed.
+   *
+   * @return		the columns
+   */
+  public int getNumCols() {
+    return m_NumCols;
+  }
+
+  /**
+   * Returns whether allocations get measured.
+   *
+   * @return		true if measured
+   */
+  public boolean getMeasureAllocations() {
+    return m_MeasureAllocations;
+  }
+
+  /**
+   * Returns the estimated number of bytes allocated by the thread.
+   *
+   * @return		the bytes, -1 if not measured or not supported
+   */
+  public long getAllocatedBytes() {
+    return m_AllocatedBytes;
+  }
+
+  /**
+   * Returns a short description of the metrics.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    StringBuilder	result;
+
+    result = new StringBuilder();
+    result.append("Total: ").append(m_TotalTime).append("ns\n");
+    for (String phase: m_Timings.keySet())
+      result.append("- ").append(phase).append(": ").append(m_Timings.get(phase)).append("ns\n");
+    result.append("Bytes read: ").append(m_BytesRead).append("\n");
+    result.append("Bytes written: ").append(m_BytesWritten).append("\n");
+    result.append("Rows: ").append(m_NumRows).append("\n");
+    result.append("Columns: ").append(m_NumCols);
+    if (m_AllocatedBytes > -1)
+      result.append("\n").append("Allocated bytes: ").append(m_AllocatedBytes);
+
+    return result.toString();
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatlabMatMetricsListener.java
+ * Copyright (C) 2026 FracPete
+ *
+ */
+
+package weka.core.converters;
+
+/**
+ * Interface for classes that want to be notified of the metrics collected
+ * by the Matlab loader/saver.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ * @see MatlabMatMetrics
+ */
+public interface MatlabMatMetricsListener {
+
+  /**
+   * Gets called when a load/save operation finished.
+   *
+   * @param source	the loader/saver that generated the metrics
+   * @param metrics	the collected metrics
+   */
+  public void metricsAvailable(Object source, MatlabMatMetrics metrics);
+}
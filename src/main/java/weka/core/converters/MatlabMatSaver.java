@@ -23,18 +23,31 @@ package weka.core.converters;
 
 import us.hebi.matlab.mat.format.Mat5;
 import us.hebi.matlab.mat.format.Mat5File;
+import us.hebi.matlab.mat.format.Mat5Reader.EntryFilter;
+import us.hebi.matlab.mat.format.Mat5Reader.EntryHeader;
+import us.hebi.matlab.mat.format.Mat5Writer;
 import us.hebi.matlab.mat.types.Cell;
+import us.hebi.matlab.mat.types.Char;
+import us.hebi.matlab.mat.types.MatlabType;
+import us.hebi.matlab.mat.types.Sink;
 import us.hebi.matlab.mat.types.Sinks;
+import us.hebi.matlab.mat.types.Source;
+import us.hebi.matlab.mat.types.Sources;
 import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
+import weka.core.Environment;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.RevisionUtils;
+import weka.core.SelectedTag;
+import weka.core.Tag;
 import weka.core.Utils;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
@@ -49,7 +62,7 @@ import java.util.Vector;
  */
 public class MatlabMatSaver
   extends AbstractFileSaver
-  implements BatchConverter {
+  implements BatchConverter, IncrementalConverter {
 
   /** for serialization */
   private static final long serialVersionUID = -7226404765213522043L;
@@ -66,6 +79,73 @@ public class MatlabMatSaver
   /** the name of the entry to store the data under. */
   protected String m_EntryNameData = DEFAULT_ENTRY_NAME_DATA;
 
+  /** the layouts for the data. */
+  public final static Tag[] TAGS_LAYOUT = {
+    new Tag(MatlabMatDataCell.LAYOUT_CELL, "cell", "Cell (rows x attributes)"),
+    new Tag(MatlabMatDataCell.LAYOUT_COLUMNS, "columns", "Columns (1 x attributes, one column vector per attribute)"),
+  };
+
+  /** the layout of the data. */
+  protected int m_Layout = MatlabMatDataCell.LAYOUT_CELL;
+
+  /** the encodings for dates. */
+  public final static Tag[] TAGS_DATE_ENCODING = {
+    new Tag(MatlabMatDataCell.DATE_STRING, "string", "String (using the attribute's format)"),
+    new Tag(MatlabMatDataCell.DATE_DATENUM, "datenum", "Matlab datenum (days since year 0)"),
+    new Tag(MatlabMatDataCell.DATE_POSIX, "posix", "POSIX time (seconds since 1970-01-01 UTC)"),
+  };
+
+  /** how to store dates. */
+  protected int m_DateEncoding = MatlabMatDataCell.DATE_STRING;
+
+  /** whether to append to an existing file. */
+  protected boolean m_Append = false;
+
+  /** the maximum number of rows per data entry (0 = single entry). */
+  protected int m_RowsPerEntry = 0;
+
+  /** whether to use the narrowest lossless type for numeric columns. */
+  protected boolean m_NarrowTypes = false;
+
+  /** the user-specified types of numeric columns (index:type,...). */
+  protected String m_ColumnTypes = "";
+
+  /** the sink in use for streaming the entries. */
+  protected transient Sink m_Sink;
+
+  /** the writer in use for streaming the entries. */
+  protected transient Mat5Writer m_Writer;
+
+  /** the names of the entries in the file being written. */
+  protected transient List<String> m_EntryNames;
+
+  /** the size of the file before appending the entries, 0 if not appending. */
+  protected transient long m_InitialLength;
+
+  /** the destination file (only gets opened when writing). */
+  protected File m_OutputFile;
+
+  /** the rows buffered in incremental mode. */
+  protected transient Instances m_Block;
+
+  /** the types of the numeric columns determined for all blocks, null if per block. */
+  protected transient MatlabType[] m_Types;
+
+  /** the number of data entries written so far. */
+  protected int m_NumBlocks;
+
+  /** whether to output the metrics on stderr. */
+  protected boolean m_Verbose = false;
+
+  /** whether to estimate the allocated bytes. */
+  protected boolean m_MeasureAllocations = false;
+
+  /** the metrics of the last save. */
+  protected MatlabMatMetrics m_Metrics;
+
+  /** the listeners for the metrics. */
+  protected transient List<MatlabMatMetricsListener> m_MetricsListeners;
+
   /**
    * Constructor
    */
@@ -81,10 +161,13 @@ public class MatlabMatSaver
    */
   public String globalInfo() {
     return "Writes binary Matlab .mat files.\n"
-      + "The header information is stored as well in three rows:\n"
+      + "The header information is stored as well in four rows:\n"
       + "- attribute names\n"
       + "- attribute types\n"
-      + "- attribute format (eg to determine date format or nominal values)";
+      + "- attribute format (eg to determine date format or nominal values)\n"
+      + "- encoding (how dates are stored: string, datenum or posix)\n"
+      + "Missing values are stored as NaN for numeric attributes and as "
+      + "empty string ('') for all other attributes.";
   }
 
   /**
@@ -143,6 +226,296 @@ public class MatlabMatSaver
     return "The entry name to use for the data.";
   }
 
+  /**
+   * Sets the layout of the data.
+   *
+   * @param value	the layout
+   */
+  public void setLayout(SelectedTag value) {
+    if (value.getTags() == TAGS_LAYOUT)
+      m_Layout = value.getSelectedTag().getID();
+  }
+
+  /**
+   * Returns the layout of the data.
+   *
+   * @return		the layout
+   */
+  public SelectedTag getLayout() {
+    return new SelectedTag(m_Layout, TAGS_LAYOUT);
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String layoutTipText() {
+    return "The layout of the data: 'cell' stores a rows x attributes cell with "
+      + "a scalar or string per value; 'columns' stores a 1 x attributes cell "
+      + "with a column vector per attribute (double matrix for numeric "
+      + "attributes, cell of strings otherwise), which is faster and smaller.";
+  }
+
+  /**
+   * Sets how to store dates.
+   *
+   * @param value	the encoding
+   */
+  public void setDateEncoding(SelectedTag value) {
+    if (value.getTags() == TAGS_DATE_ENCODING)
+      m_DateEncoding = value.getSelectedTag().getID();
+  }
+
+  /**
+   * Returns how to store dates.
+   *
+   * @return		the encoding
+   */
+  public SelectedTag getDateEncoding() {
+    return new SelectedTag(m_DateEncoding, TAGS_DATE_ENCODING);
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String dateEncodingTipText() {
+    return "How to store date attributes: 'string' uses the attribute's date "
+      + "format; 'datenum' (days since year 0) and 'posix' (seconds since "
+      + "1970-01-01 UTC) store the dates as numbers, avoiding the costly "
+      + "formatting/parsing.";
+  }
+
+  /**
+   * Sets whether to append to an existing file.
+   *
+   * @param value	true if to append
+   */
+  public void setAppend(boolean value) {
+    m_Append = value;
+  }
+
+  /**
+   * Returns whether to append to an existing file.
+   *
+   * @return		true if to append
+   */
+  public boolean getAppend() {
+    return m_Append;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String appendTipText() {
+    return "If enabled, the entries get appended to an existing Level 5 file "
+      + "rather than overwriting it; the data entry must not be present yet, "
+      + "an existing header entry must match the data.";
+  }
+
+  /**
+   * Sets the maximum number of rows per data entry.
+   *
+   * @param value	the rows, 0 for a single entry
+   */
+  public void setRowsPerEntry(int value) {
+    if (value >= 0)
+      m_RowsPerEntry = value;
+    else
+      System.err.println("Rows per entry must be at least 0, provided: " + value);
+  }
+
+  /**
+   * Returns the maximum number of rows per data entry.
+   *
+   * @return		the rows, 0 for a single entry
+   */
+  public int getRowsPerEntry() {
+    return m_RowsPerEntry;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String rowsPerEntryTipText() {
+    return "The maximum number of rows per data entry; if greater than 0, the data "
+      + "gets split into blocks (eg data_0001, data_0002, ...), each written as "
+      + "soon as it is complete; 0 stores all the data in a single entry.";
+  }
+
+  /**
+   * Sets whether to use the narrowest lossless type for numeric columns.
+   *
+   * @param value	true if to narrow
+   */
+  public void setNarrowTypes(boolean value) {
+    m_NarrowTypes = value;
+  }
+
+  /**
+   * Returns whether to use the narrowest lossless type for numeric columns.
+   *
+   * @return		true if to narrow
+   */
+  public boolean getNarrowTypes() {
+    return m_NarrowTypes;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String narrowTypesTipText() {
+    return "If enabled, numeric columns get stored using the narrowest Matlab "
+      + "class that represents all values without loss (int8, uint8, int16, "
+      + "uint16, int32, uint32 if integral without missing values, single "
+      + "if float suffices, double otherwise); only applies to the columns "
+      + "layout; when saving incrementally, determined per data entry.";
+  }
+
+  /**
+   * Sets the types of numeric columns (index:type,...).
+   *
+   * @param value	the types
+   */
+  public void setColumnTypes(String value) {
+    m_ColumnTypes = value;
+  }
+
+  /**
+   * Returns the types of numeric columns (index:type,...).
+   *
+   * @return		the types
+   */
+  public String getColumnTypes() {
+    return m_ColumnTypes;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String columnTypesTipText() {
+    return "The Matlab classes to use for numeric columns, as comma-separated "
+      + "list of 1-based index and class (eg '1:int8,3:single'); overrides "
+      + "the automatic type; fails if the class cannot represent the values "
+      + "(missing or out of range), warns if values get rounded.";
+  }
+
+  /**
+   * Sets whether to output the save metrics on stderr.
+   *
+   * @param value	true if to output
+   */
+  public void setVerbose(boolean value) {
+    m_Verbose = value;
+  }
+
+  /**
+   * Returns whether to output the save metrics on stderr.
+   *
+   * @return		true if to output
+   */
+  public boolean getVerbose() {
+    return m_Verbose;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String verboseTipText() {
+    return "If enabled, the timings of the save phases, bytes, rows and columns "
+      + "are output on stderr.";
+  }
+
+  /**
+   * Sets whether to estimate the bytes allocated during saving.
+   *
+   * @param value	true if to estimate
+   */
+  public void setMeasureAllocations(boolean value) {
+    m_MeasureAllocations = value;
+  }
+
+  /**
+   * Returns whether to estimate the bytes allocated during saving.
+   *
+   * @return		true if to estimate
+   */
+  public boolean getMeasureAllocations() {
+    return m_MeasureAllocations;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String measureAllocationsTipText() {
+    return "If enabled, the bytes allocated by the saving thread get estimated "
+      + "as part of the metrics (if supported by the JVM).";
+  }
+
+  /**
+   * Adds the listener for the metrics.
+   *
+   * @param l		the listener to add
+   */
+  public synchronized void addMetricsListener(MatlabMatMetricsListener l) {
+    if (m_MetricsListeners == null)
+      m_MetricsListeners = new ArrayList<MatlabMatMetricsListener>();
+    m_MetricsListeners.add(l);
+  }
+
+  /**
+   * Removes the listener for the metrics.
+   *
+   * @param l		the listener to remove
+   */
+  public synchronized void removeMetricsListener(MatlabMatMetricsListener l) {
+    if (m_MetricsListeners != null)
+      m_MetricsListeners.remove(l);
+  }
+
+  /**
+   * Returns the metrics of the last save.
+   *
+   * @return		the metrics, null if nothing saved yet
+   */
+  public MatlabMatMetrics getMetrics() {
+    return m_Metrics;
+  }
+
+  /**
+   * Outputs the metrics (if verbose) and notifies all listeners.
+   */
+  protected synchronized void notifyMetricsListeners() {
+    if (m_Verbose)
+      System.err.println("Metrics for: " + retrieveFile() + "\n" + m_Metrics);
+    if (m_MetricsListeners == null)
+      return;
+    for (MatlabMatMetricsListener l: m_MetricsListeners)
+      l.metricsAvailable(this, m_Metrics);
+  }
+
   /**
    * Returns an enumeration describing the available options.
    *
@@ -162,6 +535,42 @@ public class MatlabMatSaver
       + "\t(default: " + DEFAULT_ENTRY_NAME_DATA + ")",
       "entry-name-data", 1, "-entry-name-data <name>"));
 
+    result.addElement(new Option("\tThe layout of the data\n"
+      + "\t(cell|columns, default: cell)",
+      "layout", 1, "-layout <cell|columns>"));
+
+    result.addElement(new Option("\tHow to store dates\n"
+      + "\t(string|datenum|posix, default: string)",
+      "date-encoding", 1, "-date-encoding <string|datenum|posix>"));
+
+    result.addElement(new Option("\tAppends the entries to an existing Level 5 file\n"
+      + "\tinstead of overwriting it.",
+      "append", 0, "-append"));
+
+    result.addElement(new Option("\tThe maximum number of rows per data entry;\n"
+      + "\tsplits the data into blocks <name>_0001, <name>_0002, ...\n"
+      + "\tif greater than 0; 0 for a single entry\n"
+      + "\t(default: 0)",
+      "rows-per-entry", 1, "-rows-per-entry <int>"));
+
+    result.addElement(new Option("\tStores numeric columns using the narrowest lossless\n"
+      + "\tMatlab class (int8, ..., uint32, single) rather than double\n"
+      + "\t(columns layout only).",
+      "narrow-types", 0, "-narrow-types"));
+
+    result.addElement(new Option("\tThe Matlab classes of numeric columns, comma-separated\n"
+      + "\tlist of 1-based index and class, eg 1:int8,3:single\n"
+      + "\t(default: none)",
+      "column-types", 1, "-column-types <list>"));
+
+    result.addElement(new Option("\tOutputs the timings of the save phases, bytes,\n"
+      + "\trows and columns on stderr.",
+      "verbose", 0, "-verbose"));
+
+    result.addElement(new Option("\tEstimates the bytes allocated during saving\n"
+      + "\t(if supported by the JVM).",
+      "measure-allocations", 0, "-measure-allocations"));
+
     return result.elements();
   }
 
@@ -187,6 +596,34 @@ public class MatlabMatSaver
     else
       setEntryNameData(DEFAULT_ENTRY_NAME_DATA);
 
+    tmp = Utils.getOption("layout", options);
+    if (!tmp.isEmpty())
+      setLayout(new SelectedTag(tmp, TAGS_LAYOUT));
+    else
+      setLayout(new SelectedTag(MatlabMatDataCell.LAYOUT_CELL, TAGS_LAYOUT));
+
+    tmp = Utils.getOption("date-encoding", options);
+    if (!tmp.isEmpty())
+      setDateEncoding(new SelectedTag(tmp, TAGS_DATE_ENCODING));
+    else
+      setDateEncoding(new SelectedTag(MatlabMatDataCell.DATE_STRING, TAGS_DATE_ENCODING));
+
+    setAppend(Utils.getFlag("append", options));
+
+    tmp = Utils.getOption("rows-per-entry", options);
+    if (!tmp.isEmpty())
+      setRowsPerEntry(Integer.parseInt(tmp));
+    else
+      setRowsPerEntry(0);
+
+    setNarrowTypes(Utils.getFlag("narrow-types", options));
+
+    setColumnTypes(Utils.getOption("column-types", options));
+
+    setVerbose(Utils.getFlag("verbose", options));
+
+    setMeasureAllocations(Utils.getFlag("measure-allocations", options));
+
     super.setOptions(options);
 
     Utils.checkForRemainingOptions(options);
@@ -208,6 +645,32 @@ public class MatlabMatSaver
     result.add("-entry-name-data");
     result.add(getEntryNameData());
 
+    result.add("-layout");
+    result.add("" + getLayout());
+
+    result.add("-date-encoding");
+    result.add("" + getDateEncoding());
+
+    if (getAppend())
+      result.add("-append");
+
+    result.add("-rows-per-entry");
+    result.add("" + getRowsPerEntry());
+
+    if (getNarrowTypes())
+      result.add("-narrow-types");
+
+    if (!getColumnTypes().isEmpty()) {
+      result.add("-column-types");
+      result.add(getColumnTypes());
+    }
+
+    if (getVerbose())
+      result.add("-verbose");
+
+    if (getMeasureAllocations())
+      result.add("-measure-allocations");
+
     return result.toArray(new String[0]);
   }
 
@@ -237,6 +700,7 @@ public class MatlabMatSaver
   @Override
   public void resetOptions() {
     super.resetOptions();
+    m_OutputFile = null;
     setFileExtension(MatlabMatLoader.FILE_EXTENSION);
   }
 
@@ -262,6 +726,90 @@ public class MatlabMatSaver
     return result;
   }
 
+  /**
+   * Sets the destination file. The file is left untouched, it only gets
+   * created, overwritten or appended to (depending on the append mode at
+   * that time) when writing. The superclass would delete it and open a new
+   * one straight away.
+   *
+   * @param file	the destination file
+   * @throws IOException	if an error occurs
+   */
+  @Override
+  public void setDestination(File file) throws IOException {
+    String	path;
+    File	target;
+
+    path = file.getPath();
+    if (m_env == null)
+      m_env = Environment.getSystemWide();
+    try {
+      path = m_env.substitute(path);
+    }
+    catch (Exception e) {
+      // ignored
+    }
+    target = new File(path);
+    if (target.isDirectory())
+      throw new IOException("Destination is a directory: " + target);
+    if (m_useRelativePath) {
+      try {
+        target = Utils.convertToRelativePath(target);
+      }
+      catch (Exception e) {
+        // ignored
+      }
+    }
+    m_OutputFile = target;
+  }
+
+  /**
+   * Returns the destination file.
+   *
+   * @return		the file, null if not set
+   */
+  @Override
+  public File retrieveFile() {
+    if (m_OutputFile != null)
+      return m_OutputFile;
+    return super.retrieveFile();
+  }
+
+  /**
+   * Returns the destination file for writing, creating its directory if
+   * necessary.
+   *
+   * @return		the file
+   * @throws IOException	if no file set or the directory cannot be created
+   */
+  protected File getDestination() throws IOException {
+    File	result;
+    File	dir;
+
+    result = retrieveFile();
+    if (result == null)
+      throw new IOException("No destination file set!");
+    dir = result.getAbsoluteFile().getParentFile();
+    if ((dir != null) && !dir.exists() && !dir.mkdirs())
+      throw new IOException("Failed to create directory: " + dir);
+
+    return result;
+  }
+
+  /**
+   * Cancels the saving. In append mode, the existing file is kept (the
+   * superclass would delete it).
+   */
+  @Override
+  public void cancel() {
+    if (!m_Append) {
+      super.cancel();
+      return;
+    }
+    if (getWriteMode() == CANCEL)
+      resetOptions();
+  }
+
   /** Sets the writer to null. */
   public void resetWriter() {
     super.resetWriter();
@@ -274,50 +822,366 @@ public class MatlabMatSaver
    * @param data 	the data
    */
   protected void writeHeader(Mat5File mat5, Instances data) {
+    mat5.addArray(m_EntryNameMeta, createHeader(data));
+  }
+
+  /**
+   * Generates the header entry.
+   *
+   * @param data 	the data
+   * @return		the header
+   */
+  protected Cell createHeader(Instances data) {
     Cell	cell;
     int		i;
 
-    cell = Mat5.newCell(3, data.numAttributes() + 1);
+    cell = Mat5.newCell(4, data.numAttributes() + 1);
     cell.set(0, 0, Mat5.newString("name"));
     cell.set(1, 0, Mat5.newString("type"));
     cell.set(2, 0, Mat5.newString("format"));
+    cell.set(3, 0, Mat5.newString("encoding"));
     for (i = 0; i < data.numAttributes(); i++) {
       cell.set(0, i + 1, Mat5.newString(data.attribute(i).name()));
       cell.set(1, i + 1, Mat5.newString(Attribute.typeToStringShort(data.attribute(i).type())));
       cell.set(2, i + 1, Mat5.newString(data.attribute(i).toString()));
+      if (data.attribute(i).isDate())
+        cell.set(3, i + 1, Mat5.newString("" + getDateEncoding()));
+      else
+        cell.set(3, i + 1, Mat5.newString(""));
     }
 
-    mat5.addArray(m_EntryNameMeta, cell);
+    return cell;
   }
 
   /**
-   * Writes the data to the file.
+   * Checks whether the two headers are the same.
+   *
+   * @param existing	the header present in the file
+   * @param header	the header for the data
+   * @return		true if the same
+   */
+  protected boolean isSameHeader(Cell existing, Cell header) {
+    int		i;
+
+    if (!Arrays.equals(existing.getDimensions(), header.getDimensions()))
+      return false;
+    for (i = 0; i < header.getNumElements(); i++) {
+      if (!(existing.get(i) instanceof Char))
+        return false;
+      if (!((Char) existing.get(i)).getString().equals(((Char) header.get(i)).getString()))
+        return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Parses the user-specified types of the numeric columns.
+   *
+   * @param data	the data to parse the types for
+   * @return		the types per column (null entries for automatic),
+   * 			null if none specified
+   * @throws IOException	if the types are invalid
+   */
+  protected MatlabType[] parseColumnTypes(Instances data) throws IOException {
+    MatlabType[]	result;
+    String[]		parts;
+    int			index;
+    Attribute		att;
+
+    if (m_ColumnTypes.trim().isEmpty())
+      return null;
+
+    result = new MatlabType[data.numAttributes()];
+    for (String item: m_ColumnTypes.split(",")) {
+      item = item.trim();
+      if (item.isEmpty())
+        continue;
+      parts = item.split(":");
+      if (parts.length != 2)
+        throw new IOException("Expected 'index:type' for column type, got: " + item);
+      try {
+        index = Integer.parseInt(parts[0].trim()) - 1;
+      }
+      catch (NumberFormatException e) {
+        throw new IOException("Invalid column index: " + item, e);
+      }
+      if ((index < 0) || (index >= data.numAttributes()))
+        throw new IOException("Column index out of range (1-" + data.numAttributes() + "): " + item);
+      att = data.attribute(index);
+      if ((att.type() != Attribute.NUMERIC) && !(att.isDate() && (m_DateEncoding != MatlabMatDataCell.DATE_STRING)))
+        throw new IOException("Type can only be specified for numeric attributes: " + item);
+      result[index] = MatlabMatDataCell.parseType(parts[1].trim());
+      if (result[index] == null)
+        throw new IOException("Not a numeric Matlab class: " + item);
+    }
+
+    return result;
+  }
+
+  /**
+   * Creates the cell for writing the data.
+   *
+   * @param data	the data to write
+   * @return		the cell
+   * @throws IOException	if the column types are invalid
+   * @see MatlabMatDataCell
+   */
+  protected MatlabMatDataCell createDataCell(Instances data) throws IOException {
+    if (m_Types != null)
+      return new MatlabMatDataCell(data, m_Layout, m_DateEncoding, m_Types);
+    return new MatlabMatDataCell(data, m_Layout, m_DateEncoding, determineTypes(data));
+  }
+
+  /**
+   * Determines the types of the numeric columns.
+   *
+   * @param data	the data to determine the types for
+   * @return		the types
+   * @throws IOException	if the column types are invalid or cannot
+   * 				represent the values
+   * @see MatlabMatDataCell#determineTypes(Instances, int, int, boolean, MatlabType[])
+   */
+  protected MatlabType[] determineTypes(Instances data) throws IOException {
+    try {
+      return MatlabMatDataCell.determineTypes(data, m_Layout, m_DateEncoding, m_NarrowTypes, parseColumnTypes(data));
+    }
+    catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Writes the data to the file. The values only get gathered (column by
+   * column) when the file gets written.
    *
    * @param mat5	the file to write to
    * @param data 	the data
+   * @throws IOException	if the column types are invalid
+   * @see MatlabMatDataCell
    */
-  protected void writeData(Mat5File mat5, Instances data) {
-    Cell	cell;
-    int		i;
-    int		n;
-    Instance	inst;
-
-    cell = Mat5.newCell(data.numInstances(), data.numAttributes());
-    for (n = 0; n < data.numInstances(); n++) {
-      inst = data.instance(n);
-      for (i = 0; i < data.numAttributes(); i++) {
-        switch (data.attribute(i).type()) {
-	  case Attribute.NUMERIC:
-	    cell.set(n, i, Mat5.newScalar(inst.value(i)));
-	    break;
-	  default:
-	    cell.set(n, i, Mat5.newString(inst.stringValue(i)));
-	    break;
-	}
+  protected void writeData(Mat5File mat5, Instances data) throws IOException {
+    mat5.addArray(m_EntryNameData, createDataCell(data));
+  }
+
+  /**
+   * Returns the name of the data entry for the specified block.
+   *
+   * @param name	the name of the data entry
+   * @param index	the 1-based index of the block
+   * @return		the name of the block's entry, eg data_0001
+   */
+  public static String getBlockEntryName(String name, int index) {
+    return name + "_" + String.format("%04d", index);
+  }
+
+  /**
+   * Opens the file for streaming the entries. In append mode, an existing
+   * file gets checked and the entries are added to the end. Only the file
+   * header and the header entry get read, all other entries just get skipped.
+   * The header entry is written if not present yet.
+   *
+   * @param structure	the structure of the data
+   * @throws IOException	if the file is not a Level 5 file or the header
+   * 				entry doesn't match
+   */
+  protected void openEntries(Instances structure) throws IOException {
+    Source		source;
+    Mat5File		existing;
+    final List<String>	names;
+    Cell		header;
+    File		file;
+
+    m_InitialLength = 0;
+    file            = getDestination();
+    names           = new ArrayList<String>();
+    m_Metrics.startPhase(MatlabMatMetrics.PHASE_HEADER);
+    header          = createHeader(structure);
+    m_Metrics.startPhase(MatlabMatMetrics.PHASE_WRITE);
+
+    if (m_Append && file.exists() && (file.length() > 0)) {
+      // check file
+      if (MatlabMat73Reader.isMat73(file))
+        throw new IOException("Can only append to Level 5 files: " + file);
+      source = Sources.openFile(file);
+      try {
+        existing = Mat5File.readFileHeader(source);
+      }
+      catch (IllegalArgumentException e) {
+        throw new IOException("Not a Level 5 file: " + file, e);
+      }
+      finally {
+        source.close();
+      }
+      if (existing.getSubsysOffset() != 0)
+        throw new IOException("Cannot append to files with subsystem data: " + file);
+
+      // collect entry names, only read header entry
+      source = Sources.openFile(file);
+      try {
+        existing = Mat5.newReader(source)
+          .setEntryFilter(new EntryFilter() {
+            public boolean isAccepted(EntryHeader header) {
+              names.add(header.getName());
+              return header.getName().equals(m_EntryNameMeta);
+            }
+          })
+          .readMat();
       }
+      finally {
+        source.close();
+      }
+      if (names.contains(m_EntryNameMeta)) {
+        if (!(existing.getArray(m_EntryNameMeta) instanceof Cell) || !isSameHeader((Cell) existing.getArray(m_EntryNameMeta), header))
+          throw new IOException("Header entry '" + m_EntryNameMeta + "' does not match data: " + file);
+        header = null;
+      }
+      existing.close();
+
+      m_InitialLength = file.length();
+      m_Sink          = Sinks.newStreamingFile(file, true);
+      m_Sink.order(existing.getByteOrder());
+    }
+    else {
+      m_InitialLength = 0;
+      m_Sink          = Sinks.newStreamingFile(file);
+      Mat5.newMatFile().writeFileHeader(m_Sink);
+    }
+
+    m_EntryNames = names;
+    m_NumBlocks  = 0;
+    m_Writer     = Mat5.newWriter(m_Sink);
+    if (header != null) {
+      m_Writer.writeArray(m_EntryNameMeta, header);
+      m_EntryNames.add(m_EntryNameMeta);
+    }
+  }
+
+  /**
+   * Writes the data as entry to the file opened for streaming.
+   *
+   * @param name	the name of the entry
+   * @param data	the data to write
+   * @throws IOException	if the entry is already present or writing fails
+   */
+  protected void writeEntry(String name, Instances data) throws IOException {
+    if (m_EntryNames.contains(name))
+      throw new IOException("Data entry '" + name + "' already present in: " + retrieveFile());
+    m_Writer.writeArray(name, createDataCell(data));
+    m_EntryNames.add(name);
+  }
+
+  /**
+   * Writes the data as next block to the file opened for streaming.
+   *
+   * @param data	the data to write
+   * @throws IOException	if the entry is already present or writing fails
+   */
+  protected void writeBlock(Instances data) throws IOException {
+    m_NumBlocks++;
+    writeEntry(getBlockEntryName(m_EntryNameData, m_NumBlocks), data);
+  }
+
+  /**
+   * Closes the file opened for streaming.
+   *
+   * @throws IOException	if flushing/closing fails
+   */
+  protected void closeEntries() throws IOException {
+    if (m_Sink == null)
+      return;
+    try {
+      if (m_Writer != null)
+        m_Writer.flush();
     }
+    finally {
+      m_Sink.close();
+      m_Sink       = null;
+      m_Writer     = null;
+      m_EntryNames = null;
+    }
+  }
 
-    mat5.addArray(m_EntryNameData, cell);
+  /**
+   * Closes the file opened for streaming after a failure. When appending,
+   * the file gets truncated to its original size, removing any partially
+   * written entry.
+   */
+  protected void abortEntries() {
+    RandomAccessFile	raf;
+
+    try {
+      if (m_Sink != null)
+        m_Sink.close();
+    }
+    catch (Exception e) {
+      // ignored
+    }
+    m_Sink       = null;
+    m_Writer     = null;
+    m_EntryNames = null;
+
+    if (m_InitialLength > 0) {
+      raf = null;
+      try {
+        raf = new RandomAccessFile(retrieveFile(), "rw");
+        raf.setLength(m_InitialLength);
+      }
+      catch (IOException e) {
+        System.err.println("Failed to restore original size of " + retrieveFile() + ": " + e);
+      }
+      finally {
+        if (raf != null) {
+          try {
+            raf.close();
+          }
+          catch (IOException e) {
+            // ignored
+          }
+        }
+      }
+    }
+    m_InitialLength = 0;
+  }
+
+  /**
+   * Writes the data to the file as stream of entries, ie appending and/or
+   * as blocks of rows.
+   *
+   * @param data	the data to write
+   * @throws IOException	if writing fails
+   * @see #openEntries(Instances)
+   */
+  protected void writeEntries(Instances data) throws IOException {
+    int		i;
+
+    try {
+      openEntries(data);
+      if (m_RowsPerEntry > 0) {
+        // the same classes for all blocks, determined from all the data
+        m_Types = determineTypes(data);
+        for (i = 0; i < data.numInstances(); i += m_RowsPerEntry)
+          writeBlock(new Instances(data, i, Math.min(m_RowsPerEntry, data.numInstances() - i)));
+      }
+      else {
+        writeEntry(m_EntryNameData, data);
+      }
+      closeEntries();
+    }
+    catch (IOException e) {
+      abortEntries();
+      throw e;
+    }
+    catch (RuntimeException e) {
+      abortEntries();
+      throw e;
+    }
+    finally {
+      m_Types = null;
+    }
+    m_Metrics.stopPhase();
+    m_Metrics.addBytesWritten(retrieveFile().length() - m_InitialLength);
+    m_InitialLength = 0;
   }
 
   /**
@@ -330,6 +1194,7 @@ public class MatlabMatSaver
   public void writeBatch() throws IOException {
     Instances 		data;
     Mat5File		mat5;
+    Sink		sink;
 
     if (getInstances() == null)
       throw new IOException("No instances to save");
@@ -343,18 +1208,176 @@ public class MatlabMatSaver
     setRetrieval(BATCH);
     setWriteMode(WRITE);
 
-    mat5 = Mat5.newMatFile();
+    m_Metrics = new MatlabMatMetrics(m_MeasureAllocations);
+    m_Metrics.start();
     data = getInstances();
-    writeHeader(mat5, data);
-    writeData(mat5, data);
+    m_Metrics.addNumRows(data.numInstances());
+    m_Metrics.setNumCols(data.numAttributes());
+    if (m_Append || (m_RowsPerEntry > 0)) {
+      writeEntries(data);
+    }
+    else {
+      mat5 = Mat5.newMatFile();
+      m_Metrics.startPhase(MatlabMatMetrics.PHASE_HEADER);
+      writeHeader(mat5, data);
 
-    mat5.writeTo(Sinks.newStreamingFile(retrieveFile()));
+      // the values of the data entry only get gathered while writing
+      m_Metrics.startPhase(MatlabMatMetrics.PHASE_WRITE);
+      writeData(mat5, data);
+      sink = Sinks.newStreamingFile(getDestination());
+      try {
+        mat5.writeTo(sink);
+      }
+      finally {
+        sink.close();
+      }
+      m_Metrics.stopPhase();
+      m_Metrics.addBytesWritten(retrieveFile().length());
+    }
+    m_Metrics.stop();
+    notifyMetricsListeners();
 
     setWriteMode(WAIT);
     resetWriter();
     setWriteMode(CANCEL);
   }
 
+  /**
+   * Adds the instance to the current block, taking care of string and
+   * relational values.
+   *
+   * @param inst	the instance to add
+   */
+  protected void addToBlock(Instance inst) {
+    Instance	copy;
+    int		i;
+
+    copy = (Instance) inst.copy();
+    copy.setDataset(m_Block);
+    for (i = 0; i < inst.numAttributes(); i++) {
+      if (inst.isMissing(i))
+        continue;
+      if (inst.attribute(i).isString())
+        copy.setValue(i, m_Block.attribute(i).addStringValue(inst.stringValue(i)));
+      else if (inst.attribute(i).isRelationValued())
+        copy.setValue(i, m_Block.attribute(i).addRelation(inst.relationalValue(i)));
+    }
+    m_Block.add(copy);
+  }
+
+  /**
+   * Saves an instance incrementally. Structure has to be set by using the
+   * setStructure() method or setInstances() method. The rows get buffered
+   * and written as block once the maximum number of rows per entry has been
+   * reached. Without blocks, all rows get written as a single entry when
+   * the saving is finished.
+   *
+   * @param inst the instance to save, null to finish saving
+   * @throws IOException throws IOEXception if an instance cannot be saved
+   *           incrementally.
+   */
+  @Override
+  public void writeIncremental(Instance inst) throws IOException {
+    int 	writeMode;
+    Instances 	structure;
+
+    writeMode = getWriteMode();
+    structure = getInstances();
+
+    if ((getRetrieval() == BATCH) || (getRetrieval() == NONE))
+      throw new IOException("Batch and incremental saving cannot be mixed.");
+
+    if (m_EntryNameMeta.equals(m_EntryNameData))
+      throw new IOException("Header and data name are the same: " + m_EntryNameMeta);
+
+    if (writeMode == WAIT) {
+      if (structure == null) {
+        setWriteMode(CANCEL);
+        if (inst != null)
+          System.err.println("Structure (Header Information) has to be set in advance");
+      }
+      else {
+        setWriteMode(STRUCTURE_READY);
+      }
+      writeMode = getWriteMode();
+    }
+
+    if (writeMode == CANCEL) {
+      closeEntries();
+      m_Block = null;
+      cancel();
+    }
+
+    try {
+      writeIncrementalEntries(inst, structure, writeMode);
+    }
+    catch (IOException e) {
+      abortEntries();
+      m_Block = null;
+      throw e;
+    }
+    catch (RuntimeException e) {
+      abortEntries();
+      m_Block = null;
+      throw e;
+    }
+  }
+
+  /**
+   * Opens the file, buffers the instance and writes the blocks, depending
+   * on the write mode.
+   *
+   * @param inst	the instance to save, null to finish saving
+   * @param structure	the structure of the data
+   * @param writeMode	the current write mode
+   * @throws IOException	if writing fails
+   * @see #writeIncremental(Instance)
+   */
+  protected void writeIncrementalEntries(Instance inst, Instances structure, int writeMode) throws IOException {
+    if (writeMode == STRUCTURE_READY) {
+      setWriteMode(WRITE);
+      m_Metrics = new MatlabMatMetrics(m_MeasureAllocations);
+      m_Metrics.start();
+      m_Metrics.setNumCols(structure.numAttributes());
+      openEntries(structure);
+      m_Block   = structure.stringFreeStructure();
+      writeMode = getWriteMode();
+    }
+
+    if (writeMode == WRITE) {
+      if (structure == null)
+        throw new IOException("No instances information available.");
+
+      if (inst != null) {
+        addToBlock(inst);
+        m_Metrics.addNumRows(1);
+        if ((m_RowsPerEntry > 0) && (m_Block.numInstances() == m_RowsPerEntry)) {
+          writeBlock(m_Block);
+          m_Block = structure.stringFreeStructure();
+        }
+      }
+      else {
+        if (m_RowsPerEntry > 0) {
+          if (m_Block.numInstances() > 0)
+            writeBlock(m_Block);
+        }
+        else {
+          writeEntry(m_EntryNameData, m_Block);
+        }
+        closeEntries();
+        m_Block = null;
+        m_Metrics.stopPhase();
+        m_Metrics.addBytesWritten(retrieveFile().length() - m_InitialLength);
+        m_InitialLength = 0;
+        m_Metrics.stop();
+        notifyMetricsListeners();
+        m_incrementalCounter = 0;
+        resetStructure();
+        resetWriter();
+      }
+    }
+  }
+
   /**
    * Returns the revision string.
    *
@@ -0,0 +1,369 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * AbstractMatlabMatTest.java
+ * Copyright (C) 2026 FracPete
+ *
+ */
+
+package weka.core.converters;
+
+import junit.framework.TestCase;
+import us.hebi.matlab.mat.format.Mat5;
+import us.hebi.matlab.mat.format.Mat5File;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ancestor for tests of the Matlab .mat converters. Provides temporary
+ * files, access to the test data and the comparison of datasets.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public abstract class AbstractMatlabMatTest
+  extends TestCase {
+
+  /** the directory with the test data (as resources). */
+  public final static String DATA_DIR = "weka/core/converters/data/";
+
+  /** the temporary files to remove. */
+  protected List<File> m_TempFiles;
+
+  /**
+   * Constructs the test case. Called by subclasses.
+   *
+   * @param name	the name of the test
+   */
+  public AbstractMatlabMatTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception	if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_TempFiles = new ArrayList<File>();
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception	if an error occurs
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file: m_TempFiles)
+      file.delete();
+    m_TempFiles = null;
+    super.tearDown();
+  }
+
+  /**
+   * Creates a temporary file that gets removed after the test.
+   *
+   * @param suffix	the file extension
+   * @return		the file (does not exist)
+   * @throws IOException	if creation fails
+   */
+  protected File newTempFile(String suffix) throws IOException {
+    File	result;
+
+    result = File.createTempFile("matlab-", suffix);
+    result.delete();
+    m_TempFiles.add(result);
+
+    return result;
+  }
+
+  /**
+   * Copies the test data file from the resources into a temporary file, as
+   * the loader requires a file.
+   *
+   * @param name	the name of the file in the data directory
+   * @return		the temporary file
+   * @throws IOException	if copying fails
+   */
+  protected File copyResource(String name) throws IOException {
+    File		result;
+    InputStream		in;
+    OutputStream	out;
+    byte[]		buffer;
+    int			read;
+
+    in = getClass().getClassLoader().getResourceAsStream(DATA_DIR + name);
+    assertNotNull("Test data not found: " + name, in);
+    result = newTempFile(name.substring(name.lastIndexOf('.')));
+    out    = null;
+    try {
+      out    = new FileOutputStream(result);
+      buffer = new byte[8192];
+      while ((read = in.read(buffer)) != -1)
+        out.write(buffer, 0, read);
+    }
+    finally {
+      in.close();
+      if (out != null)
+        out.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Loads the ARFF file from the test data.
+   *
+   * @param name	the name of the file in the data directory
+   * @return		the data
+   * @throws IOException	if loading fails
+   */
+  protected Instances loadArff(String name) throws IOException {
+    InputStream		in;
+    Instances		result;
+
+    in = getClass().getClassLoader().getResourceAsStream(DATA_DIR + name);
+    assertNotNull("Test data not found: " + name, in);
+    try {
+      result = new Instances(new BufferedReader(new InputStreamReader(in)));
+    }
+    finally {
+      in.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates a dataset with a numeric, nominal, string, date and integer
+   * attribute. Every fifth row (starting with the second) has missing values
+   * in all but the integer attribute.
+   *
+   * @param rows	the number of rows to generate
+   * @return		the data
+   */
+  protected Instances createData(int rows) {
+    Instances			result;
+    ArrayList<Attribute>	atts;
+    double[]			values;
+    int				n;
+
+    atts = new ArrayList<Attribute>();
+    atts.add(new Attribute("num"));
+    atts.add(new Attribute("nom", Arrays.asList("a", "b", "c")));
+    atts.add(new Attribute("str", (List<String>) null));
+    atts.add(new Attribute("date", "yyyy-MM-dd HH:mm:ss"));
+    atts.add(new Attribute("int"));
+    result = new Instances("test", atts, rows);
+    for (n = 0; n < rows; n++) {
+      values    = new double[result.numAttributes()];
+      values[0] = n * 0.25 - 3.5;
+      values[1] = n % 3;
+      values[2] = result.attribute(2).addStringValue("s" + (n % 7));
+      values[3] = 1600000000000L + n * 1000L;
+      values[4] = n % 100;
+      if (n % 5 == 1) {
+        values[0] = Utils.missingValue();
+        values[1] = Utils.missingValue();
+        values[2] = Utils.missingValue();
+        values[3] = Utils.missingValue();
+      }
+      result.add(new DenseInstance(1.0, values));
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the names of the entries in the Level 5 file.
+   *
+   * @param file	the file to inspect
+   * @return		the names, in file order
+   * @throws IOException	if reading fails
+   */
+  protected List<String> getEntryNames(File file) throws IOException {
+    MatlabMat5Reader	reader;
+
+    reader = new MatlabMat5Reader(file);
+    try {
+      return new ArrayList<String>(reader.getEntryNames());
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Reads the complete Level 5 file, for inspecting the stored arrays.
+   *
+   * @param file	the file to read
+   * @return		the file content, needs closing
+   * @throws IOException	if reading fails
+   */
+  protected Mat5File readMat(File file) throws IOException {
+    return Mat5.readFromFile(file);
+  }
+
+  /**
+   * Saves the data in batch mode.
+   *
+   * @param saver	the configured saver
+   * @param data	the data to save
+   * @param file	the file to save to
+   * @throws IOException	if saving fails
+   */
+  protected void save(MatlabMatSaver saver, Instances data, File file) throws IOException {
+    saver.setInstances(data);
+    saver.setFile(file);
+    saver.writeBatch();
+  }
+
+  /**
+   * Saves the data in batch mode with the given options.
+   *
+   * @param data	the data to save
+   * @param file	the file to save to
+   * @param options	the options of the saver
+   * @return		the saver
+   * @throws Exception	if saving fails
+   */
+  protected MatlabMatSaver save(Instances data, File file, String... options) throws Exception {
+    MatlabMatSaver	result;
+
+    result = new MatlabMatSaver();
+    result.setOptions(options);
+    save(result, data, file);
+
+    return result;
+  }
+
+  /**
+   * Loads the data in batch mode.
+   *
+   * @param loader	the configured loader
+   * @param file	the file to load
+   * @return		the data
+   * @throws IOException	if loading fails
+   */
+  protected Instances load(MatlabMatLoader loader, File file) throws IOException {
+    loader.setFile(file);
+    return loader.getDataSet();
+  }
+
+  /**
+   * Loads the data incrementally, instance by instance.
+   *
+   * @param loader	the configured loader
+   * @param file	the file to load
+   * @return		the data
+   * @throws IOException	if loading fails
+   */
+  protected Instances loadIncremental(MatlabMatLoader loader, File file) throws IOException {
+    Instances	result;
+    Instances	structure;
+    Instance	inst;
+    double[]	values;
+    int		i;
+
+    loader.setFile(file);
+    structure = loader.getStructure();
+    result    = structure.stringFreeStructure();
+    while ((inst = loader.getNextInstance(structure)) != null) {
+      values = inst.toDoubleArray();
+      for (i = 0; i < values.length; i++) {
+        if (inst.isMissing(i))
+          continue;
+        if (inst.attribute(i).isString())
+          values[i] = result.attribute(i).addStringValue(inst.stringValue(i));
+        else if (inst.attribute(i).isRelationValued())
+          values[i] = result.attribute(i).addRelation(inst.relationalValue(i));
+      }
+      result.add(new DenseInstance(inst.weight(), values));
+    }
+
+    return result;
+  }
+
+  /**
+   * Loads the specified data entry in batch mode.
+   *
+   * @param file	the file to load
+   * @param entry	the name of the entry to load
+   * @return		the data
+   * @throws IOException	if loading fails
+   */
+  protected Instances load(File file, String entry) throws IOException {
+    MatlabMatLoader	loader;
+
+    loader = new MatlabMatLoader();
+    loader.setEntryName(entry);
+    return load(loader, file);
+  }
+
+  /**
+   * Checks that the attributes (names and types, and labels of nominal
+   * attributes) and the values (incl missing values) are the same.
+   *
+   * @param expected	the expected data
+   * @param actual	the actual data
+   */
+  protected void assertDataEquals(Instances expected, Instances actual) {
+    Attribute	att;
+    int		i;
+    int		n;
+
+    assertEquals("number of attributes", expected.numAttributes(), actual.numAttributes());
+    for (i = 0; i < expected.numAttributes(); i++) {
+      att = expected.attribute(i);
+      assertEquals("name of attribute #" + (i + 1), att.name(), actual.attribute(i).name());
+      assertEquals("type of attribute '" + att.name() + "'", att.type(), actual.attribute(i).type());
+      if (att.isNominal())
+        assertTrue("labels of attribute '" + att.name() + "'", att.equalsMsg(actual.attribute(i)) == null);
+    }
+    assertEquals("number of rows", expected.numInstances(), actual.numInstances());
+    for (n = 0; n < expected.numInstances(); n++) {
+      for (i = 0; i < expected.numAttributes(); i++) {
+        att = expected.attribute(i);
+        assertEquals("missing value of '" + att.name() + "' in row #" + (n + 1),
+          expected.instance(n).isMissing(i), actual.instance(n).isMissing(i));
+        if (expected.instance(n).isMissing(i))
+          continue;
+        if (att.isNumeric())
+          assertEquals("value of '" + att.name() + "' in row #" + (n + 1),
+            expected.instance(n).value(i), actual.instance(n).value(i), 1e-6);
+        else
+          assertEquals("value of '" + att.name() + "' in row #" + (n + 1),
+            expected.instance(n).stringValue(i), actual.instance(n).stringValue(i));
+      }
+    }
+  }
+}
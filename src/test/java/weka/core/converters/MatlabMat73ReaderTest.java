@@ -0,0 +1,161 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatlabMat73ReaderTest.java
+ * Copyright (C) 2026 FracPete
+ *
+ */
+
+package weka.core.converters;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import us.hebi.matlab.mat.types.Array;
+import us.hebi.matlab.mat.types.Char;
+import us.hebi.matlab.mat.types.Matrix;
+import us.hebi.matlab.mat.types.MatlabType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Tests the MatlabMat73Reader, using a small HDF5 file with a variable per
+ * supported class (and a struct, which is not supported).
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class MatlabMat73ReaderTest
+  extends AbstractMatlabMatTest {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public MatlabMat73ReaderTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Tests the detection of v7.3 files.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testIsMat73() throws Exception {
+    assertTrue(MatlabMat73Reader.isMat73(copyResource("v73.mat")));
+    assertFalse(MatlabMat73Reader.isMat73(copyResource("legacy.mat")));
+  }
+
+  /**
+   * Reads the variables and checks their classes, dimensions and values.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testRead() throws Exception {
+    MatlabMat73Reader	reader;
+    File		file;
+    Array		array;
+    Matrix		matrix;
+
+    file   = copyResource("v73.mat");
+    reader = new MatlabMat73Reader(file);
+    try {
+      assertEquals(Arrays.asList("data", "flag", "flt", "ints", "name", "obj"), new ArrayList<String>(new TreeSet<String>(reader.getEntryNames())));
+
+      matrix = (Matrix) reader.getArray("data");
+      assertEquals(MatlabType.Double, matrix.getType());
+      assertTrue(Arrays.equals(new int[]{4, 3}, matrix.getDimensions()));
+      assertEquals(2.5, matrix.getDouble(1, 0), 1e-6);
+      assertEquals(30, matrix.getDouble(2, 1), 1e-6);
+      assertTrue(Double.isNaN(matrix.getDouble(3, 2)));
+
+      matrix = (Matrix) reader.getArray("ints");
+      assertEquals(MatlabType.Int32, matrix.getType());
+      assertTrue(Arrays.equals(new int[]{3, 2}, matrix.getDimensions()));
+      assertEquals(-100000, matrix.getLong(0, 1));
+      assertEquals(3, matrix.getLong(2, 0));
+
+      matrix = (Matrix) reader.getArray("flt");
+      assertEquals(MatlabType.Single, matrix.getType());
+      assertEquals(1.25, matrix.getDouble(1), 1e-6);
+
+      matrix = (Matrix) reader.getArray("flag");
+      assertTrue(matrix.isLogical());
+      assertEquals(0, matrix.getLong(1));
+
+      array = reader.getArray("name");
+      assertTrue(array instanceof Char);
+      assertEquals("abc", ((Char) array).getString());
+
+      assertTrue("bytes read", reader.getBytesRead() > 0);
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Unsupported classes and missing variables fail.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testUnsupported() throws Exception {
+    MatlabMat73Reader	reader;
+
+    reader = new MatlabMat73Reader(copyResource("v73.mat"));
+    try {
+      try {
+        reader.getArray("obj");
+        fail("Reading a struct should fail");
+      }
+      catch (IOException e) {
+        // expected
+      }
+      try {
+        reader.getArray("missing");
+        fail("Reading a missing variable should fail");
+      }
+      catch (IOException e) {
+        // expected
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the suite
+   */
+  public static Test suite() {
+    return new TestSuite(MatlabMat73ReaderTest.class);
+  }
+
+  /**
+   * Runs the test from the command-line.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatlabMatBufferPoolTest.java
+ * Copyright (C) 2026 FracPete
+ *
+ */
+
+package weka.core.converters;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tests the MatlabMatBufferPool.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class MatlabMatBufferPoolTest
+  extends AbstractMatlabMatTest {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public MatlabMatBufferPoolTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Released arrays and buffers get handed out again.
+   */
+  public void testReuse() {
+    MatlabMatBufferPool	pool;
+    double[]		doubles;
+    String[]		strings;
+    ByteBuffer		buffer;
+
+    pool    = new MatlabMatBufferPool(1024 * 1024);
+    doubles = pool.acquireDoubles(1000);
+    assertEquals(1024, doubles.length);
+    pool.releaseDoubles(doubles);
+    assertEquals(8 * 1024, pool.getRetained());
+    assertSame(doubles, pool.acquireDoubles(1000));
+    assertEquals(0, pool.getRetained());
+
+    strings    = pool.acquireStrings(10);
+    strings[0] = "a";
+    pool.releaseStrings(strings);
+    assertSame(strings, pool.acquireStrings(10));
+    assertNull("strings get cleared", strings[0]);
+
+    buffer = pool.allocate(10000);
+    assertEquals(10000, buffer.remaining());
+    pool.release(buffer);
+    assertSame(buffer, pool.allocate(9000));
+    assertEquals(9000, buffer.remaining());
+  }
+
+  /**
+   * Only up to the maximum number of bytes get retained, lowering the
+   * maximum drops pooled arrays.
+   */
+  public void testMaxRetained() {
+    MatlabMatBufferPool	pool;
+    int			i;
+
+    pool = new MatlabMatBufferPool(8 * 1024 * 3);
+    for (i = 0; i < 5; i++)
+      pool.releaseDoubles(new double[1024]);
+    assertEquals(8 * 1024 * 3, pool.getRetained());
+
+    pool.setMaxRetained(8 * 1024);
+    assertEquals(8 * 1024, pool.getMaxRetained());
+    assertEquals(8 * 1024, pool.getRetained());
+
+    pool.setMaxRetained(0);
+    assertEquals(0, pool.getRetained());
+    pool.releaseDoubles(new double[1024]);
+    assertEquals("nothing retained", 0, pool.getRetained());
+
+    try {
+      pool.setMaxRetained(-1);
+      fail("Negative maximum should fail");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the suite
+   */
+  public static Test suite() {
+    return new TestSuite(MatlabMatBufferPoolTest.class);
+  }
+
+  /**
+   * Runs the test from the command-line.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatlabMatDataCellTest.java
+ * Copyright (C) 2026 FracPete
+ *
+ */
+
+package weka.core.converters;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import us.hebi.matlab.mat.types.MatlabType;
+
+/**
+ * Tests the MatlabMatDataCell helper methods.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class MatlabMatDataCellTest
+  extends AbstractMatlabMatTest {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public MatlabMatDataCellTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Tests the conversion to integers: rounding, saturation and NaN.
+   */
+  public void testToInteger() {
+    assertEquals(0, MatlabMatDataCell.toInteger(Double.NaN, MatlabType.Int32));
+    assertEquals(3, MatlabMatDataCell.toInteger(2.5, MatlabType.Int32));
+    assertEquals(-3, MatlabMatDataCell.toInteger(-2.5, MatlabType.Int32));
+    assertEquals(127, MatlabMatDataCell.toInteger(1000, MatlabType.Int8));
+    assertEquals(-128, MatlabMatDataCell.toInteger(-1000, MatlabType.Int8));
+    assertEquals(0, MatlabMatDataCell.toInteger(-5, MatlabType.UInt8));
+    assertEquals(Long.MAX_VALUE, MatlabMatDataCell.toInteger(1e19, MatlabType.Int64));
+    assertEquals(Long.MIN_VALUE, MatlabMatDataCell.toInteger(-1e19, MatlabType.Int64));
+    // uint64 beyond the range of long: two's complement bit pattern
+    assertEquals(Long.MIN_VALUE, MatlabMatDataCell.toInteger(9.223372036854775808E18, MatlabType.UInt64));
+    assertEquals(-1L, MatlabMatDataCell.toInteger(1e20, MatlabType.UInt64));
+  }
+
+  /**
+   * Tests the narrowest lossless type for ranges of values.
+   */
+  public void testNarrowType() {
+    assertEquals(MatlabType.Int8, MatlabMatDataCell.narrowType(-5, 100, true, true));
+    assertEquals(MatlabType.UInt8, MatlabMatDataCell.narrowType(0, 255, true, true));
+    assertEquals(MatlabType.Int16, MatlabMatDataCell.narrowType(-200, 200, true, true));
+    assertEquals(MatlabType.UInt16, MatlabMatDataCell.narrowType(0, 65535, true, true));
+    assertEquals(MatlabType.Int32, MatlabMatDataCell.narrowType(-70000, 70000, true, true));
+    assertEquals(MatlabType.UInt32, MatlabMatDataCell.narrowType(0, 4e9, true, true));
+    assertEquals(MatlabType.Single, MatlabMatDataCell.narrowType(-0.5, 0.5, false, true));
+    assertEquals(MatlabType.Double, MatlabMatDataCell.narrowType(-0.1, 0.1, false, false));
+  }
+
+  /**
+   * Tests the encoding and decoding of dates.
+   */
+  public void testDates() {
+    double	date;
+    int		encoding;
+
+    date = 1600000000123.0;
+    assertEquals(1600000000.123, MatlabMatDataCell.encodeDate(date, MatlabMatDataCell.DATE_POSIX), 1e-6);
+    assertEquals(719529.0, MatlabMatDataCell.encodeDate(0, MatlabMatDataCell.DATE_DATENUM), 1e-9);
+    for (encoding = MatlabMatDataCell.DATE_DATENUM; encoding <= MatlabMatDataCell.DATE_POSIX; encoding++)
+      assertEquals(date, MatlabMatDataCell.decodeDate(MatlabMatDataCell.encodeDate(date, encoding), encoding), 1e-3);
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the suite
+   */
+  public static Test suite() {
+    return new TestSuite(MatlabMatDataCellTest.class);
+  }
+
+  /**
+   * Runs the test from the command-line.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,314 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatlabMatLoaderTest.java
+ * Copyright (C) 2026 FracPete
+ *
+ */
+
+package weka.core.converters;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests the MatlabMatLoader.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class MatlabMatLoaderTest
+  extends AbstractMatlabMatTest {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public MatlabMatLoaderTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Loads a file written by the previous version of the saver, with a
+   * header entry without encoding row and missing values stored as "?".
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testLegacyFile() throws Exception {
+    Instances	expected;
+    Instances	actual;
+
+    expected = loadArff("legacy.arff");
+    actual   = load(new MatlabMatLoader(), copyResource("legacy.mat"));
+    assertDataEquals(expected, actual);
+  }
+
+  /**
+   * Reassembles the blocks of rows, either via the empty entry name or the
+   * name of the data entry, and loads individual blocks.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testBlocks() throws Exception {
+    Instances	data;
+    File	file;
+    String[]	layouts;
+    int		i;
+
+    data    = createData(55);
+    layouts = new String[]{"cell", "columns"};
+    for (i = 0; i < layouts.length; i++) {
+      file = newTempFile(".mat");
+      save(data, file, "-layout", layouts[i], "-rows-per-entry", "20");
+      assertDataEquals(data, load(file, ""));
+      assertDataEquals(data, load(file, "data"));
+      assertDataEquals(new Instances(data, 20, 20), load(file, "data_0002"));
+      assertDataEquals(data, loadIncremental(new MatlabMatLoader(), file));
+    }
+  }
+
+  /**
+   * Weka's DataSource loads the data incrementally.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testDataSource() throws Exception {
+    Instances		data;
+    Instances		structure;
+    File		file;
+    MatlabMatLoader	loader;
+    DataSource		source;
+    Instance		inst;
+    int			n;
+
+    data = createData(50);
+    file = newTempFile(".mat");
+    save(data, file, "-rows-per-entry", "20");
+
+    loader = new MatlabMatLoader();
+    loader.setFile(file);
+    source = new DataSource(loader);
+    assertTrue(source.isIncremental());
+    structure = source.getStructure();
+    assertEquals(0, structure.numInstances());
+    n = 0;
+    while (source.hasMoreElements(structure)) {
+      inst = source.nextElement(structure);
+      assertEquals(data.instance(n).value(0), inst.value(0), 1e-6);
+      assertEquals(data.instance(n).isMissing(1), inst.isMissing(1));
+      n++;
+    }
+    assertEquals(data.numInstances(), n);
+
+    assertDataEquals(data, DataSource.read(file.getAbsolutePath()));
+  }
+
+  /**
+   * Without header entry, the attributes get inferred from the data.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testNoHeader() throws Exception {
+    Instances		data;
+    Instances		actual;
+    File		file;
+    MatlabMatLoader	loader;
+    int			n;
+
+    data = createData(30);
+    file = newTempFile(".mat");
+    save(data, file);
+
+    loader = new MatlabMatLoader();
+    loader.setOptions(new String[]{"-entry-name", "data", "-entry-name-meta", ""});
+    actual = load(loader, file);
+    assertEquals(data.numAttributes(), actual.numAttributes());
+    assertEquals(data.numInstances(), actual.numInstances());
+    assertEquals(Attribute.NUMERIC, actual.attribute(0).type());
+    assertEquals(Attribute.NOMINAL, actual.attribute(1).type());
+    assertEquals(Attribute.NUMERIC, actual.attribute(4).type());
+    for (n = 0; n < data.numInstances(); n++) {
+      assertEquals(data.instance(n).isMissing(0), actual.instance(n).isMissing(0));
+      assertEquals(data.instance(n).isMissing(1), actual.instance(n).isMissing(1));
+      assertEquals(data.instance(n).value(4), actual.instance(n).value(4), 1e-6);
+      if (!data.instance(n).isMissing(1))
+        assertEquals(data.instance(n).stringValue(1), actual.instance(n).stringValue(1));
+    }
+  }
+
+  /**
+   * Loads the entries of a v7.3 (HDF5) file.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testMat73() throws Exception {
+    File	file;
+    Instances	data;
+
+    file = copyResource("v73.mat");
+
+    data = load(file, "data");
+    assertEquals(3, data.numAttributes());
+    assertEquals(4, data.numInstances());
+    assertEquals(1.5, data.instance(0).value(0), 1e-6);
+    assertEquals(40, data.instance(3).value(1), 1e-6);
+    assertEquals(-2, data.instance(1).value(2), 1e-6);
+    assertTrue(data.instance(2).isMissing(0));
+    assertTrue(data.instance(3).isMissing(2));
+
+    data = load(file, "ints");
+    assertEquals(2, data.numAttributes());
+    assertEquals(3, data.numInstances());
+    assertEquals(-100000, data.instance(0).value(1), 1e-6);
+    assertEquals(100000, data.instance(2).value(1), 1e-6);
+
+    data = load(file, "flt");
+    assertEquals(1.25, data.instance(1).value(0), 1e-6);
+    assertTrue(data.instance(2).isMissing(0));
+
+    data = load(file, "flag");
+    assertEquals(4, data.numInstances());
+    assertEquals(0, data.instance(1).value(0), 1e-6);
+    assertEquals(1, data.instance(3).value(0), 1e-6);
+
+    data = load(file, "");
+    assertEquals("first entry", 4, data.numInstances());
+    assertDataEquals(data, loadIncremental(new MatlabMatLoader(), file));
+
+    try {
+      load(file, "obj");
+      fail("Loading a struct should fail");
+    }
+    catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Loads blocks of rows incrementally, with and without prefetching. The
+   * metrics of the blocks converted by the prefetching thread get recorded
+   * as well.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testIncrementalMetrics() throws Exception {
+    Instances		data;
+    File		file;
+    MatlabMatSaver	saver;
+    MatlabMatLoader	loader;
+    int			prefetch;
+
+    data  = createData(100);
+    file  = newTempFile(".mat");
+    saver = new MatlabMatSaver();
+    saver.setRowsPerEntry(10);
+    save(saver, data, file);
+
+    for (prefetch = 0; prefetch <= 2; prefetch++) {
+      loader = new MatlabMatLoader();
+      loader.setPrefetch(prefetch);
+      assertDataEquals(data, loadIncremental(loader, file));
+      assertEquals("rows (prefetch=" + prefetch + ")", data.numInstances(), loader.getMetrics().getNumRows());
+      assertEquals("columns (prefetch=" + prefetch + ")", data.numAttributes(), loader.getMetrics().getNumCols());
+      assertTrue("convert timing (prefetch=" + prefetch + ")", loader.getMetrics().getTiming(MatlabMatMetrics.PHASE_CONVERT) > 0);
+      assertTrue("bytes read (prefetch=" + prefetch + ")", loader.getMetrics().getBytesRead() > 0);
+    }
+  }
+
+  /**
+   * Loads the same file from multiple threads, using the static methods.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testConcurrentLoad() throws Exception {
+    Instances			data;
+    final File			file;
+    final MatlabMatLoader	settings;
+    final List<Object>		results;
+    Thread[]			threads;
+    int				i;
+
+    data = createData(200);
+    file = newTempFile(".mat");
+    save(new MatlabMatSaver(), data, file);
+
+    settings = new MatlabMatLoader();
+    settings.setOptions(new String[]{"-max-nominal-values", "10"});
+    results  = Collections.synchronizedList(new ArrayList<Object>());
+    threads  = new Thread[8];
+    for (i = 0; i < threads.length; i++) {
+      final boolean parse = (i % 2 == 0);
+      threads[i] = new Thread(new Runnable() {
+        public void run() {
+          int	n;
+
+          try {
+            for (n = 0; n < 10; n++) {
+              if (parse)
+                results.add(MatlabMatLoader.load(file, new String[]{"-max-nominal-values", "10"}));
+              else
+                results.add(MatlabMatLoader.loadWithSettings(file, settings));
+            }
+          }
+          catch (Exception e) {
+            results.add(e);
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (i = 0; i < threads.length; i++)
+      threads[i].join();
+
+    assertEquals(threads.length * 10, results.size());
+    for (Object result: results) {
+      if (result instanceof Exception)
+        throw (Exception) result;
+      assertDataEquals(data, (Instances) result);
+    }
+    assertEquals("settings unchanged", 10, settings.getMaxNominalValues());
+    assertNull("settings unused", settings.getMetrics());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the suite
+   */
+  public static Test suite() {
+    return new TestSuite(MatlabMatLoaderTest.class);
+  }
+
+  /**
+   * Runs the test from the command-line.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
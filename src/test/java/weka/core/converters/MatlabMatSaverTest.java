@@ -0,0 +1,505 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatlabMatSaverTest.java
+ * Copyright (C) 2026 FracPete
+ *
+ */
+
+package weka.core.converters;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import us.hebi.matlab.mat.format.Mat5File;
+import us.hebi.matlab.mat.types.Cell;
+import us.hebi.matlab.mat.types.Char;
+import us.hebi.matlab.mat.types.Matrix;
+import us.hebi.matlab.mat.types.MatlabType;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests the MatlabMatSaver.
+ *
+ * @author FracPete (fracpete at gmail dot com)
+ */
+public class MatlabMatSaverTest
+  extends AbstractMatlabMatTest {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public MatlabMatSaverTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Saves the data using either layout and checks the stored structure.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testLayouts() throws Exception {
+    Instances	data;
+    File	file;
+    Mat5File	mat;
+    Cell	cell;
+
+    data = createData(50);
+
+    file = newTempFile(".mat");
+    save(data, file, "-layout", "cell");
+    assertDataEquals(data, load(new MatlabMatLoader(), file));
+    mat = readMat(file);
+    try {
+      cell = mat.getCell("data");
+      assertEquals(50, cell.getNumRows());
+      assertEquals(5, cell.getNumCols());
+      assertTrue(cell.get(0, 0) instanceof Matrix);
+      assertEquals(-3.5, ((Matrix) cell.get(0, 0)).getDouble(0), 1e-6);
+      assertEquals("s3", ((Char) cell.get(3, 2)).getString());
+      assertEquals(4, mat.getCell("meta").getNumRows());
+    }
+    finally {
+      mat.close();
+    }
+
+    file = newTempFile(".mat");
+    save(data, file, "-layout", "columns");
+    assertDataEquals(data, load(new MatlabMatLoader(), file));
+    mat = readMat(file);
+    try {
+      cell = mat.getCell("data");
+      assertEquals(1, cell.getNumRows());
+      assertEquals(5, cell.getNumCols());
+      assertEquals(50, ((Matrix) cell.get(0, 0)).getNumRows());
+      assertEquals(-3.5, ((Matrix) cell.get(0, 0)).getDouble(0), 1e-6);
+      assertEquals(50, ((Cell) cell.get(0, 2)).getNumRows());
+      assertEquals("s3", ((Char) ((Cell) cell.get(0, 2)).get(3)).getString());
+    }
+    finally {
+      mat.close();
+    }
+  }
+
+  /**
+   * Missing values get stored as NaN (numeric) and '' (all others), in
+   * either layout.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testMissingValues() throws Exception {
+    Instances	data;
+    File	file;
+    Mat5File	mat;
+    Cell	cell;
+    Cell	column;
+
+    data = createData(10);
+
+    file = newTempFile(".mat");
+    save(data, file, "-layout", "cell");
+    mat = readMat(file);
+    try {
+      cell = mat.getCell("data");
+      assertTrue(Double.isNaN(((Matrix) cell.get(1, 0)).getDouble(0)));
+      assertEquals("", ((Char) cell.get(1, 1)).getString());
+      assertEquals("", ((Char) cell.get(1, 2)).getString());
+      assertEquals("", ((Char) cell.get(1, 3)).getString());
+    }
+    finally {
+      mat.close();
+    }
+
+    file = newTempFile(".mat");
+    save(data, file, "-layout", "columns", "-date-encoding", "posix");
+    mat = readMat(file);
+    try {
+      cell   = mat.getCell("data");
+      column = (Cell) cell.get(0, 1);
+      assertTrue(Double.isNaN(((Matrix) cell.get(0, 0)).getDouble(1)));
+      assertEquals("", ((Char) column.get(1)).getString());
+      assertEquals("", ((Char) ((Cell) cell.get(0, 2)).get(1)).getString());
+      assertTrue(Double.isNaN(((Matrix) cell.get(0, 3)).getDouble(1)));
+    }
+    finally {
+      mat.close();
+    }
+    assertDataEquals(data, load(new MatlabMatLoader(), file));
+  }
+
+  /**
+   * Dates survive the round trip with every encoding, the numeric ones get
+   * stored as numbers.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testDateEncodings() throws Exception {
+    Instances	data;
+    File	file;
+    Mat5File	mat;
+    String[]	layouts;
+    String[]	encodings;
+    double[]	expected;
+    int		i;
+    int		n;
+
+    data      = createData(20);
+    layouts   = new String[]{"cell", "columns"};
+    encodings = new String[]{"string", "datenum", "posix"};
+    expected  = new double[]{Double.NaN, 719529.0 + 1600000000.0 / 86400.0, 1600000000.0};
+    for (i = 0; i < layouts.length; i++) {
+      for (n = 0; n < encodings.length; n++) {
+        file = newTempFile(".mat");
+        save(data, file, "-layout", layouts[i], "-date-encoding", encodings[n]);
+        assertDataEquals(data, load(new MatlabMatLoader(), file));
+        assertDataEquals(data, loadIncremental(new MatlabMatLoader(), file));
+        mat = readMat(file);
+        try {
+          if (layouts[i].equals("cell")) {
+            if (n == 0)
+              assertTrue(mat.getCell("data").get(0, 3) instanceof Char);
+            else
+              assertEquals(expected[n], ((Matrix) mat.getCell("data").get(0, 3)).getDouble(0), 1e-6);
+          }
+          else {
+            if (n == 0)
+              assertTrue(mat.getCell("data").get(0, 3) instanceof Cell);
+            else
+              assertEquals(expected[n], ((Matrix) mat.getCell("data").get(0, 3)).getDouble(0), 1e-6);
+          }
+        }
+        finally {
+          mat.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Splits the data into blocks of rows, in batch and incremental mode.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testBlocks() throws Exception {
+    Instances		data;
+    File		file;
+    MatlabMatSaver	saver;
+    int			i;
+
+    data = createData(50);
+    file = newTempFile(".mat");
+    save(data, file, "-rows-per-entry", "20");
+    assertEquals(Arrays.asList("meta", "data_0001", "data_0002", "data_0003"), getEntryNames(file));
+    assertDataEquals(new Instances(data, 0, 20), load(file, "data_0001"));
+    assertDataEquals(new Instances(data, 20, 20), load(file, "data_0002"));
+    assertDataEquals(new Instances(data, 40, 10), load(file, "data_0003"));
+
+    file  = newTempFile(".mat");
+    saver = new MatlabMatSaver();
+    saver.setOptions(new String[]{"-rows-per-entry", "20", "-layout", "columns"});
+    saver.setFile(file);
+    saver.setRetrieval(AbstractSaver.INCREMENTAL);
+    saver.setStructure(new Instances(data, 0));
+    for (i = 0; i < data.numInstances(); i++)
+      saver.writeIncremental(data.instance(i));
+    saver.writeIncremental(null);
+    assertEquals(Arrays.asList("meta", "data_0001", "data_0002", "data_0003"), getEntryNames(file));
+    assertDataEquals(new Instances(data, 20, 20), load(file, "data_0002"));
+    assertDataEquals(data, load(file, "data"));
+  }
+
+  /**
+   * Narrow types only apply to the columns layout, explicit column types
+   * to both; invalid column types fail.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testNarrowTypes() throws Exception {
+    Instances	data;
+    File	file;
+    Mat5File	mat;
+
+    data = createData(50);
+
+    file = newTempFile(".mat");
+    save(data, file, "-layout", "columns", "-narrow-types");
+    assertDataEquals(data, load(new MatlabMatLoader(), file));
+    mat = readMat(file);
+    try {
+      assertEquals(MatlabType.Single, mat.getCell("data").get(0, 0).getType());
+      assertEquals(MatlabType.Int8, mat.getCell("data").get(0, 4).getType());
+    }
+    finally {
+      mat.close();
+    }
+
+    file = newTempFile(".mat");
+    save(data, file, "-layout", "cell", "-narrow-types");
+    mat = readMat(file);
+    try {
+      assertEquals(MatlabType.Double, mat.getCell("data").get(0, 0).getType());
+      assertEquals(MatlabType.Double, mat.getCell("data").get(0, 4).getType());
+    }
+    finally {
+      mat.close();
+    }
+
+    file = newTempFile(".mat");
+    save(data, file, "-layout", "cell", "-column-types", "5:uint16");
+    assertDataEquals(data, load(new MatlabMatLoader(), file));
+    mat = readMat(file);
+    try {
+      assertEquals(MatlabType.UInt16, mat.getCell("data").get(0, 4).getType());
+    }
+    finally {
+      mat.close();
+    }
+
+    file = newTempFile(".mat");
+    try {
+      save(data, file, "-layout", "columns", "-column-types", "1:int8");
+      fail("Missing values in int8 column should fail");
+    }
+    catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Relational attributes get restored from the header.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testRelational() throws Exception {
+    Instances			data;
+    Instances			bag;
+    ArrayList<Attribute>	atts;
+    ArrayList<Attribute>	bagAtts;
+    double[]			values;
+    File			file;
+    int				i;
+
+    bagAtts = new ArrayList<Attribute>();
+    bagAtts.add(new Attribute("x"));
+    bagAtts.add(new Attribute("y", Arrays.asList("u", "v")));
+    atts = new ArrayList<Attribute>();
+    atts.add(new Attribute("id"));
+    atts.add(new Attribute("bag", new Instances("bag", bagAtts, 0)));
+    data = new Instances("relational", atts, 0);
+    for (i = 0; i < 5; i++) {
+      bag = new Instances(data.attribute(1).relation(), 0);
+      bag.add(new DenseInstance(1.0, new double[]{i, 0}));
+      bag.add(new DenseInstance(1.0, new double[]{i * 2, 1}));
+      values    = new double[2];
+      values[0] = i;
+      values[1] = data.attribute(1).addRelation(bag);
+      data.add(new DenseInstance(1.0, values));
+    }
+
+    file = newTempFile(".mat");
+    save(data, file);
+    assertDataEquals(data, load(new MatlabMatLoader(), file));
+  }
+
+  /**
+   * Appends an entry to an existing file, with the file getting set before
+   * and after enabling the append mode.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testAppend() throws Exception {
+    Instances		data;
+    File		file;
+    MatlabMatSaver	saver;
+    long		length;
+    int			i;
+
+    data = createData(20);
+    for (i = 0; i < 2; i++) {
+      file = newTempFile(".mat");
+      save(data, file, "-entry-name-data", "d1");
+      length = file.length();
+
+      saver = new MatlabMatSaver();
+      saver.setEntryNameData("d2");
+      saver.setInstances(new Instances(data, 0, 10));
+      if (i == 0) {
+        saver.setFile(file);
+        saver.setAppend(true);
+      }
+      else {
+        saver.setAppend(true);
+        saver.setFile(file);
+      }
+      assertEquals("file untouched before writing", length, file.length());
+      saver.writeBatch();
+
+      assertEquals(Arrays.asList("meta", "d1", "d2"), getEntryNames(file));
+      assertEquals(file.length() - length, saver.getMetrics().getBytesWritten());
+      assertDataEquals(data, load(file, "d1"));
+      assertDataEquals(new Instances(data, 0, 10), load(file, "d2"));
+    }
+  }
+
+  /**
+   * Appending an entry that is already present fails and leaves the file
+   * unchanged.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testAppendExistingEntry() throws Exception {
+    Instances		data;
+    File		file;
+    long		length;
+
+    data = createData(20);
+    file = newTempFile(".mat");
+    save(data, file, "-entry-name-data", "d1");
+    length = file.length();
+    try {
+      save(data, file, "-append", "-entry-name-data", "d1");
+      fail("Appending existing entry should fail");
+    }
+    catch (IOException e) {
+      // expected
+    }
+    assertEquals(length, file.length());
+    assertEquals(Arrays.asList("meta", "d1"), getEntryNames(file));
+  }
+
+  /**
+   * Appending with a header that does not match the existing one fails.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testAppendHeaderMismatch() throws Exception {
+    Instances		data;
+    File		file;
+
+    data = createData(20);
+    file = newTempFile(".mat");
+    save(data, file, "-entry-name-data", "d1");
+    data.renameAttribute(0, "other");
+    try {
+      save(data, file, "-append", "-entry-name-data", "d2");
+      fail("Appending data with different header should fail");
+    }
+    catch (IOException e) {
+      // expected
+    }
+    assertEquals(Arrays.asList("meta", "d1"), getEntryNames(file));
+  }
+
+  /**
+   * A failure while appending (missing value in an int16 column of the
+   * second block) truncates the file to its original size.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testAppendTruncatesOnFailure() throws Exception {
+    Instances		data;
+    File		file;
+    MatlabMatSaver	saver;
+    Instance		inst;
+    long		length;
+    int			i;
+
+    data = createData(30);
+    file = newTempFile(".mat");
+    save(data, file, "-entry-name-data", "d1");
+    length = file.length();
+
+    saver = new MatlabMatSaver();
+    saver.setOptions(new String[]{"-append", "-entry-name-data", "d2", "-rows-per-entry", "10", "-column-types", "5:int16"});
+    saver.setFile(file);
+    saver.setRetrieval(AbstractSaver.INCREMENTAL);
+    saver.setStructure(new Instances(data, 0));
+    try {
+      for (i = 0; i < data.numInstances(); i++) {
+        inst = (Instance) data.instance(i).copy();
+        if (i == 15)
+          inst.setMissing(4);
+        saver.writeIncremental(inst);
+      }
+      saver.writeIncremental(null);
+      fail("Saving a missing value as int16 should fail");
+    }
+    catch (IOException e) {
+      // expected
+    }
+    assertEquals(length, file.length());
+    assertEquals(Arrays.asList("meta", "d1"), getEntryNames(file));
+    assertDataEquals(data, load(file, "d1"));
+  }
+
+  /**
+   * Tests the metrics of saving, with and without streaming the entries.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testMetrics() throws Exception {
+    Instances		data;
+    File		file;
+    MatlabMatSaver	saver;
+    String[][]		options;
+    int			i;
+
+    data    = createData(50);
+    options = new String[][]{
+      {},
+      {"-layout", "columns"},
+      {"-rows-per-entry", "20"},
+    };
+    for (i = 0; i < options.length; i++) {
+      file  = newTempFile(".mat");
+      saver = save(data, file, options[i]);
+      assertEquals("bytes written " + Arrays.toString(options[i]), file.length(), saver.getMetrics().getBytesWritten());
+      assertEquals("rows " + Arrays.toString(options[i]), data.numInstances(), saver.getMetrics().getNumRows());
+      assertEquals("columns " + Arrays.toString(options[i]), data.numAttributes(), saver.getMetrics().getNumCols());
+      assertEquals("phases " + Arrays.toString(options[i]),
+        Arrays.asList(MatlabMatMetrics.PHASE_HEADER, MatlabMatMetrics.PHASE_WRITE),
+        new ArrayList<String>(saver.getMetrics().getTimings().keySet()));
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the suite
+   */
+  public static Test suite() {
+    return new TestSuite(MatlabMatSaverTest.class);
+  }
+
+  /**
+   * Runs the test from the command-line.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}